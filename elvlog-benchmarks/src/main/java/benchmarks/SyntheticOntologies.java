@@ -0,0 +1,132 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.SWRLAtom;
+import org.semanticweb.owlapi.model.SWRLVariable;
+
+// Generates EL and ELVn ontologies of a given size in which every axiom has the same shape
+public class SyntheticOntologies {
+
+	public enum Shape {
+		ATOMIC_HIERARCHY, EXISTENTIAL_NESTING, PROPERTY_CHAINS, SWRL_RULES, NOMINAL_SCHEMAS
+	}
+
+	private static String namespace = "http://elvlog.benchmark/";
+	private static OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+	public static OWLOntology generate(Shape shape, int size, int depth, long seed)
+			throws OWLOntologyCreationException {
+		return OWLManager.createOWLOntologyManager().createOntology(axioms(shape, size, depth, seed));
+	}
+
+	public static Set<OWLAxiom> axioms(Shape shape, int size, int depth, long seed) {
+		Random random = new Random(seed);
+		int vocabularySize = Math.max(2, size / 4);
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+
+		// Bounded in case the vocabulary is too small for size distinct axioms
+		for (int i = 0; axioms.size() < size && i < 100 * size; i++) {
+			switch (shape) {
+			case ATOMIC_HIERARCHY:
+				// A_i sqsubseteq A_j, with j < i so that the hierarchy is acyclic
+				axioms.add(factory.getOWLSubClassOfAxiom(concept(i + 1), concept(random.nextInt(i + 1))));
+				break;
+
+			case EXISTENTIAL_NESTING:
+				// A sqsubseteq exists R.(B sqcap exists R.(...)) and its equivalence counterpart
+				OWLClassExpression nested = nestedExistential(random, vocabularySize, depth);
+				OWLClass concept = concept(random.nextInt(vocabularySize));
+				axioms.add(i % 2 == 0 ? factory.getOWLSubClassOfAxiom(concept, nested)
+						: factory.getOWLEquivalentClassesAxiom(concept, nested));
+				break;
+
+			case PROPERTY_CHAINS:
+				// R_1 o ... o R_depth sqsubseteq S, with some transitive roles
+				List<OWLObjectProperty> chain = new ArrayList<OWLObjectProperty>();
+				for (int j = 0; j < Math.max(2, depth); j++)
+					chain.add(role(random.nextInt(vocabularySize)));
+				axioms.add(factory.getOWLSubPropertyChainOfAxiom(chain, role(random.nextInt(vocabularySize))));
+				if (i % 10 == 0)
+					axioms.add(factory.getOWLTransitiveObjectPropertyAxiom(role(random.nextInt(vocabularySize))));
+				break;
+
+			case SWRL_RULES:
+				// A(x) wedge R(x, y) wedge ... wedge B(y) -> C(x)
+				axioms.add(pathRule(random, vocabularySize, depth, false));
+				break;
+
+			case NOMINAL_SCHEMAS:
+				// Rules whose variables are shared across several atoms, as in ELVn nominal schemas
+				axioms.add(pathRule(random, vocabularySize, depth, true));
+				break;
+			}
+		}
+		return axioms;
+	}
+
+	// Head-side existentials exercise the fresh constants, body-side ones the fresh variables
+	public static List<OWLClassExpression> classExpressions(int size, int depth, long seed) {
+		Random random = new Random(seed);
+		List<OWLClassExpression> classExpressions = new ArrayList<OWLClassExpression>();
+		for (int i = 0; i < size; i++)
+			classExpressions.add(nestedExistential(random, Math.max(2, size / 4), depth));
+		return classExpressions;
+	}
+
+	private static OWLClassExpression nestedExistential(Random random, int vocabularySize, int depth) {
+		OWLClassExpression filler = concept(random.nextInt(vocabularySize));
+		for (int j = 0; j < depth; j++)
+			filler = factory.getOWLObjectIntersectionOf(concept(random.nextInt(vocabularySize)),
+					factory.getOWLObjectSomeValuesFrom(role(random.nextInt(vocabularySize)), filler));
+		return factory.getOWLObjectSomeValuesFrom(role(random.nextInt(vocabularySize)), filler);
+	}
+
+	private static OWLAxiom pathRule(Random random, int vocabularySize, int depth, boolean nominalSchema) {
+		Set<SWRLAtom> body = new HashSet<SWRLAtom>();
+		SWRLVariable first = variable(0);
+		body.add(factory.getSWRLClassAtom(concept(random.nextInt(vocabularySize)), first));
+		for (int j = 0; j < Math.max(1, depth); j++)
+			body.add(factory.getSWRLObjectPropertyAtom(role(random.nextInt(vocabularySize)), variable(j),
+					variable(j + 1)));
+		SWRLVariable last = variable(Math.max(1, depth));
+		body.add(factory.getSWRLClassAtom(concept(random.nextInt(vocabularySize)), last));
+
+		if (nominalSchema) {
+			// The same variable links the start of the path to every other element of the path
+			for (int j = 2; j <= Math.max(1, depth); j++)
+				body.add(factory.getSWRLObjectPropertyAtom(role(random.nextInt(vocabularySize)), first, variable(j)));
+			return factory.getSWRLRule(body, new HashSet<SWRLAtom>(Arrays
+					.asList(factory.getSWRLObjectPropertyAtom(role(random.nextInt(vocabularySize)), first, last))));
+		}
+		return factory.getSWRLRule(body, new HashSet<SWRLAtom>(
+				Arrays.asList(factory.getSWRLClassAtom(concept(random.nextInt(vocabularySize)), first))));
+	}
+
+	private static OWLClass concept(int index) {
+		return factory.getOWLClass(IRI.create(namespace + "A" + index));
+	}
+
+	private static OWLObjectProperty role(int index) {
+		return factory.getOWLObjectProperty(IRI.create(namespace + "R" + index));
+	}
+
+	private static SWRLVariable variable(int index) {
+		return factory.getSWRLVariable(IRI.create(namespace + "x" + index));
+	}
+
+}
@@ -0,0 +1,55 @@
+package reasoner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.vlog4j.core.model.api.Variable;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+import benchmarks.SyntheticOntologies;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConceptExpressionBenchmark {
+
+	@Param({ "1", "3", "6" })
+	public int depth;
+
+	@Param({ "true", "false" })
+	public boolean buildingHead;
+
+	private List<OWLClassExpression> classExpressions;
+	private OWLToRulesConverter converter;
+	private Variable vX = Expressions.makeUniversalVariable("VX");
+
+	@Setup(Level.Trial)
+	public void generate() throws OWLOntologyCreationException {
+		classExpressions = SyntheticOntologies.classExpressions(1000, depth, 42);
+		converter = new OWLToRulesConverter(OWLManager.createOWLOntologyManager().createOntology(), rule -> {
+		});
+	}
+
+	// Fresh constants are shared by equal restrictions, so they are forgotten to convert heads from scratch
+	@Benchmark
+	public void conceptExpToAtoms(Blackhole blackhole) {
+		if (buildingHead)
+			converter.clearWitnesses();
+		for (OWLClassExpression classExpression : classExpressions)
+			blackhole.consume(converter.conceptExpToAtoms(classExpression, vX, buildingHead));
+	}
+
+}
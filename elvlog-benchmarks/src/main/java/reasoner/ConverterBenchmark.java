@@ -0,0 +1,51 @@
+package reasoner;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import benchmarks.SyntheticOntologies;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConverterBenchmark {
+
+	@Param({ "ATOMIC_HIERARCHY", "EXISTENTIAL_NESTING", "PROPERTY_CHAINS", "SWRL_RULES", "NOMINAL_SCHEMAS" })
+	public SyntheticOntologies.Shape shape;
+
+	@Param({ "1000", "10000" })
+	public int size;
+
+	@Param({ "3" })
+	public int depth;
+
+	private OWLOntology ontology;
+
+	@Setup(Level.Trial)
+	public void generate() throws OWLOntologyCreationException {
+		ontology = SyntheticOntologies.generate(shape, size, depth, 42);
+	}
+
+	@Setup(Level.Invocation)
+	public void clearVerdicts() {
+		Filter.clearVerdicts();
+	}
+
+	@Benchmark
+	public OWLToRulesConverter convert(Blackhole blackhole) throws OWLOntologyCreationException {
+		return new OWLToRulesConverter(ontology, blackhole::consume);
+	}
+
+}
@@ -0,0 +1,52 @@
+package reasoner;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import benchmarks.SyntheticOntologies;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FilterBenchmark {
+
+	@Param({ "ATOMIC_HIERARCHY", "EXISTENTIAL_NESTING", "PROPERTY_CHAINS", "SWRL_RULES", "NOMINAL_SCHEMAS" })
+	public SyntheticOntologies.Shape shape;
+
+	@Param({ "1000", "10000" })
+	public int size;
+
+	@Param({ "3" })
+	public int depth;
+
+	private Set<OWLAxiom> axioms;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		axioms = SyntheticOntologies.axioms(shape, size, depth, 42);
+	}
+
+	// Every invocation checks the axioms from scratch instead of reusing cached verdicts
+	@Setup(Level.Invocation)
+	public void clearVerdicts() {
+		Filter.clearVerdicts();
+	}
+
+	@Benchmark
+	public Set<OWLAxiom> filterDataAndAnnotationAxioms() throws OWLOntologyCreationException {
+		return Filter.filterDataAndAnnotationAxioms(axioms);
+	}
+
+}
@@ -0,0 +1,151 @@
+package abox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import reasoner.SpecialPreds;
+
+// Splits an N-Triples ABox into files that share no individual. Subjects and objects of triples other than
+// class assertions and literal values are connected, and the connected components are spread over the files,
+// largest first, into the file with fewest triples. The terms that every partition shares (the constants of
+// the rule heads) must not occur in the ABox; if one does, the ABox is not split.
+public class ABoxPartitioner {
+
+	private Set<String> sharedTerms;
+	private String sharedTermInData;
+
+	private Map<String, Integer> ids = new HashMap<String, Integer>();
+	private int[] parents = new int[1024];
+	private int[] tripleCounts = new int[1024];
+
+	public ABoxPartitioner(Set<String> sharedTerms) {
+		this.sharedTerms = sharedTerms;
+	}
+
+	// Returns the partition files, or null if a shared term occurs in the ABox
+	public List<File> split(File dataFile, int partitions, File directory) throws IOException {
+		try (BufferedReader reader = openData(dataFile)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] triple = NTriplesParser.parseTriple(line);
+				if (triple == null)
+					continue;
+				for (int i = 0; i < 3; i += 2)
+					if (sharedTerms.contains(triple[i]) || sharedTerms.contains(trim(triple[i]))) {
+						sharedTermInData = triple[i];
+						return null;
+					}
+
+				int subject = id(triple[0]);
+				tripleCounts[subject]++;
+				if (!triple[1].equals(SpecialPreds.rdfTypePredName) && !triple[2].startsWith("\""))
+					union(subject, id(triple[2]));
+			}
+		}
+
+		// Greedy assignment of the components by decreasing number of triples
+		Map<Integer, Long> componentTriples = new HashMap<Integer, Long>();
+		for (int id = 0; id < ids.size(); id++)
+			componentTriples.merge(find(id), (long) tripleCounts[id], Long::sum);
+		List<Map.Entry<Integer, Long>> components = new ArrayList<Map.Entry<Integer, Long>>(
+				componentTriples.entrySet());
+		components.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+		long[] partitionTriples = new long[partitions];
+		PriorityQueue<Integer> partitionQueue = new PriorityQueue<Integer>(partitions,
+				(first, second) -> Long.compare(partitionTriples[first], partitionTriples[second]));
+		for (int partition = 0; partition < partitions; partition++)
+			partitionQueue.add(partition);
+		int[] componentPartitions = new int[ids.size()];
+		for (Map.Entry<Integer, Long> component : components) {
+			int partition = partitionQueue.poll();
+			componentPartitions[component.getKey()] = partition;
+			partitionTriples[partition] += component.getValue();
+			partitionQueue.add(partition);
+		}
+
+		directory.mkdirs();
+		List<File> partitionFiles = new ArrayList<File>();
+		List<Writer> writers = new ArrayList<Writer>();
+		try {
+			for (int partition = 0; partition < partitions; partition++) {
+				File partitionFile = new File(directory, "partition" + partition + ".nt");
+				partitionFiles.add(partitionFile);
+				writers.add(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partitionFile),
+						StandardCharsets.UTF_8), 1 << 16));
+			}
+			try (BufferedReader reader = openData(dataFile)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] triple = NTriplesParser.parseTriple(line);
+					if (triple == null)
+						continue;
+					Writer writer = writers.get(componentPartitions[find(ids.get(triple[0]))]);
+					writer.write(line);
+					writer.write('\n');
+				}
+			}
+		} finally {
+			for (Writer writer : writers)
+				writer.close();
+		}
+		return partitionFiles;
+	}
+
+	public String getSharedTermInData() {
+		return sharedTermInData;
+	}
+
+	private static BufferedReader openData(File dataFile) throws IOException {
+		return new BufferedReader(
+				new InputStreamReader(PartitionedTripleLoader.openDataFile(dataFile), StandardCharsets.UTF_8),
+				1 << 16);
+	}
+
+	private static String trim(String term) {
+		return term.startsWith("<") ? term.substring(1, term.length() - 1) : term;
+	}
+
+	private int id(String term) {
+		Integer id = ids.get(term);
+		if (id == null) {
+			id = ids.size();
+			ids.put(term, id);
+			if (id == parents.length) {
+				parents = Arrays.copyOf(parents, id * 2);
+				tripleCounts = Arrays.copyOf(tripleCounts, id * 2);
+			}
+			parents[id] = id;
+		}
+		return id;
+	}
+
+	private int find(int id) {
+		while (parents[id] != id) {
+			parents[id] = parents[parents[id]];
+			id = parents[id];
+		}
+		return id;
+	}
+
+	private void union(int first, int second) {
+		int firstRoot = find(first);
+		int secondRoot = find(second);
+		if (firstRoot != secondRoot)
+			parents[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+	}
+
+}
@@ -0,0 +1,67 @@
+package abox;
+
+// Minimal N-Triples line parser; terms are returned as they are written in the file
+public class NTriplesParser {
+
+	// Returns subject, property and object, or null for empty lines, comments and malformed lines
+	public static String[] parseTriple(String line) {
+		int position = skipWhitespace(line, 0);
+		if (position == line.length() || line.charAt(position) == '#')
+			return null;
+
+		String[] triple = new String[3];
+		for (int i = 0; i < 3; i++) {
+			int end = termEnd(line, position);
+			if (end < 0) {
+				System.out.println("WARNING!!! Malformed N-Triples line is ignored: " + line);
+				return null;
+			}
+			triple[i] = line.substring(position, end);
+			position = skipWhitespace(line, end);
+		}
+		return triple;
+	}
+
+	private static int termEnd(String line, int position) {
+		if (position >= line.length())
+			return -1;
+
+		switch (line.charAt(position)) {
+		case '<':
+			// IRI
+			int iriEnd = line.indexOf('>', position);
+			return iriEnd < 0 ? -1 : iriEnd + 1;
+
+		case '"':
+			// Literal with optional language tag or datatype
+			int i = position + 1;
+			while (i < line.length() && line.charAt(i) != '"')
+				i += line.charAt(i) == '\\' ? 2 : 1;
+			if (i >= line.length())
+				return -1;
+			i++;
+			if (i < line.length() && line.charAt(i) == '@')
+				while (i < line.length() && !Character.isWhitespace(line.charAt(i)) && line.charAt(i) != '.')
+					i++;
+			else if (line.startsWith("^^", i))
+				return termEnd(line, i + 2);
+			return i;
+
+		default:
+			// Blank node
+			if (!line.startsWith("_:", position))
+				return -1;
+			int blankEnd = position;
+			while (blankEnd < line.length() && !Character.isWhitespace(line.charAt(blankEnd)))
+				blankEnd++;
+			return blankEnd;
+		}
+	}
+
+	private static int skipWhitespace(String line, int position) {
+		while (position < line.length() && Character.isWhitespace(line.charAt(position)))
+			position++;
+		return position;
+	}
+
+}
@@ -0,0 +1,210 @@
+package abox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+
+import org.semanticweb.vlog4j.core.model.api.DataSourceDeclaration;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.implementation.DataSourceDeclarationImpl;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+import org.semanticweb.vlog4j.core.reasoner.implementation.CsvFileDataSource;
+
+import reasoner.SpecialPreds;
+
+// Splits an N-Triples file into one CSV file per predicate of the rule set, replacing the triple relation
+// and its loading rules: unary predicates get the subjects of the triples whose object is the predicate,
+// binary predicates the subject and object of the triples whose property is the predicate.
+public class PartitionedTripleLoader {
+
+	private static int maxOpenWriters = 256;
+	private static String indexFileName = "partitions.index";
+
+	private Map<String, Predicate> unaryPredicates = new HashMap<String, Predicate>();
+	private Map<String, Predicate> binaryPredicates = new HashMap<String, Predicate>();
+
+	private File partitionDirectory;
+	private Map<Predicate, File> partitionFiles = new LinkedHashMap<Predicate, File>();
+
+	// Least recently used writers are closed and later reopened in append mode
+	private Map<Predicate, Writer> openWriters = new LinkedHashMap<Predicate, Writer>(16, 0.75f, true);
+
+	public PartitionedTripleLoader(Set<Predicate> predicates, File partitionDirectory) {
+		this.partitionDirectory = partitionDirectory;
+		for (Predicate predicate : predicates)
+			if (predicate.getArity() == 1)
+				unaryPredicates.put(predicate.getName(), predicate);
+			else if (predicate.getArity() == 2)
+				// Assertions of transitive roles go to their base relation
+				binaryPredicates.merge(SpecialPreds.dataPredName(predicate), predicate,
+						(first, second) -> SpecialPreds.isInternalPredicate(first) ? first : second);
+	}
+
+	public List<DataSourceDeclaration> partition(File dataFile) throws IOException {
+		partitionDirectory.mkdirs();
+		new File(partitionDirectory, indexFileName).delete();
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(openDataFile(dataFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] triple = NTriplesParser.parseTriple(line);
+				if (triple == null)
+					continue;
+
+				Predicate binaryPredicate = binaryPredicates.get(triple[1]);
+				if (binaryPredicate != null)
+					writeRow(binaryPredicate, triple[0], triple[2]);
+
+				Predicate unaryPredicate = unaryPredicates.get(triple[2]);
+				if (unaryPredicate != null)
+					writeRow(unaryPredicate, triple[0]);
+			}
+		} finally {
+			closeWriters();
+		}
+		return declarations();
+	}
+
+	// Binary predicates are read from the group of their property, unary ones need a single pass over the
+	// triples that compares identifiers instead of terms. The partitions are indexed under the stamp of the
+	// store and the predicates, and reused as long as neither changes.
+	public List<DataSourceDeclaration> partition(TripleStore store) throws IOException {
+		partitionDirectory.mkdirs();
+		File indexFile = new File(partitionDirectory, indexFileName);
+		String key = store.getStamp() + "\t" + predicateKey();
+		if (readIndex(indexFile, key))
+			return declarations();
+		indexFile.delete();
+
+		try {
+			for (Map.Entry<String, Integer> id : store.ids(binaryPredicates.keySet()).entrySet()) {
+				Predicate binaryPredicate = binaryPredicates.get(id.getKey());
+				store.forEachTriple(id.getValue(), (subject, property, object) -> writeRow(binaryPredicate,
+						store.term(subject), store.term(object)));
+			}
+
+			Map<Integer, Predicate> unaryPredicatesById = new HashMap<Integer, Predicate>();
+			for (Map.Entry<String, Integer> id : store.ids(unaryPredicates.keySet()).entrySet())
+				unaryPredicatesById.put(id.getValue(), unaryPredicates.get(id.getKey()));
+			if (!unaryPredicatesById.isEmpty())
+				store.forEachTriple((subject, property, object) -> {
+					Predicate unaryPredicate = unaryPredicatesById.get(object);
+					if (unaryPredicate != null)
+						writeRow(unaryPredicate, store.term(subject));
+				});
+		} finally {
+			closeWriters();
+		}
+		writeIndex(indexFile, key);
+		return declarations();
+	}
+
+	private String predicateKey() {
+		Set<String> names = new TreeSet<String>();
+		for (Predicate predicate : unaryPredicates.values())
+			names.add(predicate.getName());
+		for (Predicate predicate : binaryPredicates.values())
+			names.add(predicate.getName());
+		return String.join(" ", names);
+	}
+
+	// Key line followed by (arity, predicate name, file name) per partition
+	private boolean readIndex(File indexFile, String key) throws IOException {
+		if (!indexFile.isFile())
+			return false;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+			if (!key.equals(reader.readLine()))
+				return false;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				partitionFiles.put(Expressions.makePredicate(fields[1], Integer.parseInt(fields[0])),
+						new File(partitionDirectory, fields[2]));
+			}
+		}
+		return true;
+	}
+
+	private void writeIndex(File indexFile, String key) throws IOException {
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(indexFile), StandardCharsets.UTF_8))) {
+			writer.write(key + "\n");
+			for (Map.Entry<Predicate, File> partitionFile : partitionFiles.entrySet())
+				writer.write(partitionFile.getKey().getArity() + "\t" + partitionFile.getKey().getName() + "\t"
+						+ partitionFile.getValue().getName() + "\n");
+		}
+	}
+
+	private void closeWriters() throws IOException {
+		for (Writer writer : openWriters.values())
+			writer.close();
+		openWriters.clear();
+	}
+
+	private List<DataSourceDeclaration> declarations() throws IOException {
+		List<DataSourceDeclaration> declarations = new ArrayList<DataSourceDeclaration>();
+		for (Map.Entry<Predicate, File> partitionFile : partitionFiles.entrySet())
+			declarations.add(new DataSourceDeclarationImpl(partitionFile.getKey(),
+					new CsvFileDataSource(partitionFile.getValue())));
+		return declarations;
+	}
+
+	public static InputStream openDataFile(File dataFile) throws IOException {
+		InputStream input = new FileInputStream(dataFile);
+		if (dataFile.getName().endsWith(".gz"))
+			input = new GZIPInputStream(input, 1 << 16);
+		return input;
+	}
+
+	private void writeRow(Predicate predicate, String... terms) throws IOException {
+		Writer writer = openWriters.get(predicate);
+		if (writer == null) {
+			File partitionFile = partitionFiles.get(predicate);
+			boolean append = partitionFile != null;
+			if (!append) {
+				partitionFile = new File(partitionDirectory, "p" + partitionFiles.size() + ".csv");
+				partitionFiles.put(predicate, partitionFile);
+			}
+			if (openWriters.size() == maxOpenWriters) {
+				Map.Entry<Predicate, Writer> eldest = openWriters.entrySet().iterator().next();
+				eldest.getValue().close();
+				openWriters.remove(eldest.getKey());
+			}
+			writer = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(partitionFile, append), StandardCharsets.UTF_8));
+			openWriters.put(predicate, writer);
+		}
+
+		for (int i = 0; i < terms.length; i++) {
+			if (i > 0)
+				writer.write(',');
+			writer.write(csvValue(terms[i]));
+		}
+		writer.write('\n');
+	}
+
+	private static String csvValue(String term) {
+		if (term.indexOf(',') < 0 && term.indexOf('"') < 0)
+			return term;
+		return '"' + term.replace("\"", "\"\"") + '"';
+	}
+
+}
@@ -0,0 +1,388 @@
+package abox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Dictionary encoded copy of an N-Triples file that is built once and memory-mapped by later runs. Triples are
+// stored as (subject, property, object) integer identifiers grouped by property, followed by an index of the
+// groups and by the dictionary. The file is parsed in parallel in line-aligned chunks, each worker writes its
+// encoded triples to a temporary file, and the triples are then scattered into their groups in the mapped store.
+//
+// Layout: magic, version, triple count, index offset, dictionary offset; triples; number of groups followed by
+// (property, first triple, triple count) per group; number of terms followed by (length, UTF-8 bytes) per term.
+public class TripleStore implements Closeable {
+
+	private static int magic = 0x454C5654;
+	private static int formatVersion = 1;
+	private static int headerSize = 32;
+	private static int tripleSize = 12;
+	private static long segmentSize = 1L << 30;
+	private static long minChunkSize = 1L << 24;
+
+	private RandomAccessFile file;
+	private MappedByteBuffer[] segments;
+	private long tripleCount;
+	private Map<Integer, long[]> groups = new LinkedHashMap<Integer, long[]>();
+	private long[] termOffsets;
+	private String stamp;
+
+	// Builds the store unless an up to date one already exists
+	public static TripleStore open(File dataFile, File storeFile, int threads) throws IOException {
+		if (!storeFile.isFile() || storeFile.lastModified() < dataFile.lastModified())
+			new Builder(dataFile, storeFile, threads).build();
+		return new TripleStore(storeFile);
+	}
+
+	public TripleStore(File storeFile) throws IOException {
+		file = new RandomAccessFile(storeFile, "r");
+		stamp = storeFile.length() + "-" + storeFile.lastModified();
+		segments = map(file.getChannel(), FileChannel.MapMode.READ_ONLY, file.length());
+
+		if (getInt(0) != magic || getInt(4) != formatVersion)
+			throw new IOException("Unsupported triple store format in " + storeFile);
+		tripleCount = getLong(8);
+		long indexOffset = getLong(16);
+		long dictionaryOffset = getLong(24);
+
+		int groupCount = getInt(indexOffset);
+		for (int i = 0; i < groupCount; i++) {
+			long entry = indexOffset + 4 + i * 20L;
+			groups.put(getInt(entry), new long[] { getLong(entry + 4), getLong(entry + 12) });
+		}
+
+		termOffsets = new long[getInt(dictionaryOffset)];
+		long position = dictionaryOffset + 4;
+		for (int i = 0; i < termOffsets.length; i++) {
+			termOffsets[i] = position;
+			position += 4 + getInt(position);
+		}
+	}
+
+	public long getTripleCount() {
+		return tripleCount;
+	}
+
+	public int getTermCount() {
+		return termOffsets.length;
+	}
+
+	// Changes whenever the store is rebuilt
+	public String getStamp() {
+		return stamp;
+	}
+
+	public String term(int id) {
+		long position = termOffsets[id];
+		byte[] bytes = new byte[getInt(position)];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = getByte(position + 4 + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Identifiers of the given terms that occur in the store, comparing encoded bytes of equal length only
+	public Map<String, Integer> ids(Collection<String> terms) {
+		Map<Integer, List<byte[]>> termsByLength = new HashMap<Integer, List<byte[]>>();
+		for (String term : terms) {
+			byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+			termsByLength.computeIfAbsent(bytes.length, length -> new ArrayList<byte[]>()).add(bytes);
+		}
+
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (int id = 0; id < termOffsets.length; id++) {
+			List<byte[]> candidates = termsByLength.get(getInt(termOffsets[id]));
+			if (candidates != null)
+				for (byte[] candidate : candidates)
+					if (matches(termOffsets[id] + 4, candidate))
+						ids.put(new String(candidate, StandardCharsets.UTF_8), id);
+		}
+		return ids;
+	}
+
+	// Triples with the given property, as (subject, property, object) identifiers
+	public void forEachTriple(int property, TripleConsumer consumer) throws IOException {
+		long[] group = groups.get(property);
+		if (group != null)
+			forEachTriple(group[0], group[0] + group[1], consumer);
+	}
+
+	public void forEachTriple(TripleConsumer consumer) throws IOException {
+		forEachTriple(0, tripleCount, consumer);
+	}
+
+	private void forEachTriple(long first, long end, TripleConsumer consumer) throws IOException {
+		for (long triple = first; triple < end; triple++) {
+			long position = headerSize + triple * tripleSize;
+			consumer.accept(getInt(position), getInt(position + 4), getInt(position + 8));
+		}
+	}
+
+	public interface TripleConsumer {
+		void accept(int subject, int property, int object) throws IOException;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segments = null;
+		file.close();
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long size)
+			throws IOException {
+		MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+		for (int i = 0; i < segments.length; i++) {
+			long start = i * segmentSize;
+			segments[i] = channel.map(mode, start, Math.min(segmentSize, size - start));
+		}
+		return segments;
+	}
+
+	// Triples and the index are aligned, but the lengths in the dictionary follow terms of any length and may
+	// cross segments, in which case they are read byte by byte
+	private int getInt(long position) {
+		int offset = (int) (position % segmentSize);
+		if (offset <= segmentSize - 4)
+			return segments[(int) (position / segmentSize)].getInt(offset);
+		return (getByte(position) & 0xFF) << 24 | (getByte(position + 1) & 0xFF) << 16
+				| (getByte(position + 2) & 0xFF) << 8 | getByte(position + 3) & 0xFF;
+	}
+
+	private long getLong(long position) {
+		return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xFFFFFFFFL);
+	}
+
+	private byte getByte(long position) {
+		return segments[(int) (position / segmentSize)].get((int) (position % segmentSize));
+	}
+
+	private boolean matches(long position, byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++)
+			if (getByte(position + i) != bytes[i])
+				return false;
+		return true;
+	}
+
+	private static class Builder {
+
+		private File dataFile;
+		private File storeFile;
+		private int threads;
+
+		// Dictionary shared by all workers; identifiers are assigned in order of first occurrence
+		private Map<String, Integer> dictionary = new ConcurrentHashMap<String, Integer>();
+		private List<String> terms = new ArrayList<String>();
+
+		Builder(File dataFile, File storeFile, int threads) {
+			this.dataFile = dataFile;
+			this.storeFile = storeFile;
+			this.threads = threads;
+		}
+
+		void build() throws IOException {
+			// Gzipped files cannot be split, so they are parsed by a single worker
+			long dataSize = dataFile.length();
+			int chunkCount = dataFile.getName().endsWith(".gz") ? 1
+					: (int) Math.max(1, Math.min(threads * 4L, dataSize / minChunkSize));
+			long chunkSize = (dataSize + chunkCount - 1) / chunkCount;
+
+			List<File> chunkFiles = new ArrayList<File>();
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<Map<Integer, Long>>> futures = new ArrayList<Future<Map<Integer, Long>>>();
+				for (int i = 0; i < chunkCount; i++) {
+					File chunkFile = new File(storeFile.getPath() + ".chunk" + i);
+					chunkFiles.add(chunkFile);
+					long start = i * chunkSize;
+					// The last chunk reads to the end, also when the size is that of the compressed file
+					long end = i == chunkCount - 1 ? Long.MAX_VALUE : start + chunkSize;
+					futures.add(executor.submit(() -> parseChunk(start, end, chunkFile)));
+				}
+
+				// Groups ordered by property, each starting where the previous one ends
+				Map<Integer, Long> groupSizes = new TreeMap<Integer, Long>();
+				for (Future<Map<Integer, Long>> future : futures)
+					for (Map.Entry<Integer, Long> groupSize : future.get().entrySet())
+						groupSizes.merge(groupSize.getKey(), groupSize.getValue(), Long::sum);
+				write(chunkFiles, groupSizes);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof UncheckedIOException)
+					throw ((UncheckedIOException) e.getCause()).getCause();
+				throw new IOException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+				for (File chunkFile : chunkFiles)
+					chunkFile.delete();
+			}
+		}
+
+		// Lines starting in [start, end) belong to the chunk; returns the number of triples per property
+		private Map<Integer, Long> parseChunk(long start, long end, File chunkFile) {
+			Map<Integer, Long> groupSizes = new HashMap<Integer, Long>();
+			try (InputStream input = openChunk(start);
+					DataOutputStream output = new DataOutputStream(
+							new BufferedOutputStream(new FileOutputStream(chunkFile), 1 << 16))) {
+				long position = start;
+				if (start > 0) {
+					// The byte before the chunk tells whether a line starts right at the chunk
+					int read;
+					position--;
+					while ((read = input.read()) != -1) {
+						position++;
+						if (read == '\n')
+							break;
+					}
+				}
+
+				byte[] line = new byte[1024];
+				while (position < end) {
+					int length = 0;
+					int read;
+					while ((read = input.read()) != -1 && read != '\n') {
+						if (length == line.length)
+							line = Arrays.copyOf(line, line.length * 2);
+						line[length++] = (byte) read;
+					}
+					if (read == -1 && length == 0)
+						break;
+					position += length + (read == '\n' ? 1 : 0);
+
+					String[] triple = NTriplesParser.parseTriple(new String(line, 0, length, StandardCharsets.UTF_8));
+					if (triple == null)
+						continue;
+					int property = encode(triple[1]);
+					output.writeInt(encode(triple[0]));
+					output.writeInt(property);
+					output.writeInt(encode(triple[2]));
+					groupSizes.merge(property, 1L, Long::sum);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return groupSizes;
+		}
+
+		private InputStream openChunk(long start) throws IOException {
+			if (start == 0)
+				return new BufferedInputStream(PartitionedTripleLoader.openDataFile(dataFile), 1 << 16);
+			FileChannel channel = new FileInputStream(dataFile).getChannel();
+			channel.position(start - 1);
+			return new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+		}
+
+		private int encode(String term) {
+			Integer id = dictionary.get(term);
+			if (id != null)
+				return id;
+			synchronized (dictionary) {
+				return dictionary.computeIfAbsent(term, t -> {
+					terms.add(t);
+					return terms.size() - 1;
+				});
+			}
+		}
+
+		private void write(List<File> chunkFiles, Map<Integer, Long> groupSizes) throws IOException {
+			Map<Integer, Long> groupStarts = new LinkedHashMap<Integer, Long>();
+			long tripleCount = 0;
+			for (Map.Entry<Integer, Long> groupSize : groupSizes.entrySet()) {
+				groupStarts.put(groupSize.getKey(), tripleCount);
+				tripleCount += groupSize.getValue();
+			}
+			long indexOffset = headerSize + tripleCount * tripleSize;
+			long dictionaryOffset = indexOffset + 4 + groupSizes.size() * 20L;
+
+			File temporaryFile = new File(storeFile.getPath() + ".tmp");
+			try (RandomAccessFile store = new RandomAccessFile(temporaryFile, "rw")) {
+				store.setLength(indexOffset);
+				FileChannel channel = store.getChannel();
+				MappedByteBuffer[] segments = map(channel, FileChannel.MapMode.READ_WRITE, indexOffset);
+
+				putInt(segments, 0, magic);
+				putInt(segments, 4, formatVersion);
+				putInt(segments, 8, (int) (tripleCount >>> 32));
+				putInt(segments, 12, (int) tripleCount);
+				putInt(segments, 16, (int) (indexOffset >>> 32));
+				putInt(segments, 20, (int) indexOffset);
+				putInt(segments, 24, (int) (dictionaryOffset >>> 32));
+				putInt(segments, 28, (int) dictionaryOffset);
+
+				// Scattering the triples of each chunk into their groups
+				Map<Integer, Long> nextTriples = new HashMap<Integer, Long>(groupStarts);
+				for (File chunkFile : chunkFiles)
+					try (DataInputStream input = new DataInputStream(
+							new BufferedInputStream(new FileInputStream(chunkFile), 1 << 16))) {
+						long chunkTriples = chunkFile.length() / tripleSize;
+						for (long i = 0; i < chunkTriples; i++) {
+							int subject = input.readInt();
+							int property = input.readInt();
+							int object = input.readInt();
+							long position = headerSize + nextTriples.merge(property, 1L, Long::sum) * tripleSize
+									- tripleSize;
+							putInt(segments, position, subject);
+							putInt(segments, position + 4, property);
+							putInt(segments, position + 8, object);
+						}
+					}
+				for (MappedByteBuffer segment : segments)
+					segment.force();
+
+				// Index and dictionary
+				store.seek(indexOffset);
+				DataOutputStream output = new DataOutputStream(
+						new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+				output.writeInt(groupSizes.size());
+				for (Map.Entry<Integer, Long> groupStart : groupStarts.entrySet()) {
+					output.writeInt(groupStart.getKey());
+					output.writeLong(groupStart.getValue());
+					output.writeLong(groupSizes.get(groupStart.getKey()));
+				}
+				output.writeInt(terms.size());
+				for (String term : terms) {
+					byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+					output.writeInt(bytes.length);
+					output.write(bytes);
+				}
+				output.flush();
+			}
+
+			storeFile.delete();
+			if (!temporaryFile.renameTo(storeFile))
+				throw new IOException("Could not write the triple store " + storeFile);
+		}
+
+		private static void putInt(MappedByteBuffer[] segments, long position, int value) {
+			segments[(int) (position / segmentSize)].putInt((int) (position % segmentSize), value);
+		}
+
+	}
+
+}
@@ -0,0 +1,38 @@
+package backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
+
+// Materialises the rules, facts and data sources of a knowledge base. Facts are handed over as CSV files with
+// one row per fact, as VLog exports them natively.
+public interface ReasoningBackend extends AutoCloseable {
+
+	// SEMINAIVE_EQUALITY treats owl:sameAs as equality, which the rules of the converter do not axiomatise
+	public enum Engine {
+		VLOG, SEMINAIVE, SEMINAIVE_EQUALITY
+	}
+
+	public static ReasoningBackend create(Engine engine, KnowledgeBase kb) {
+		if (engine == Engine.VLOG)
+			return new VLogBackend(kb);
+		return new SemiNaiveBackend(kb, Runtime.getRuntime().availableProcessors(),
+				engine == Engine.SEMINAIVE_EQUALITY);
+	}
+
+	// Materialisation may stop once a fact of the predicates has been derived; VLog always completes it
+	void stopWhenDerived(Set<Predicate> predicates);
+
+	void reason() throws IOException;
+
+	void exportFacts(Predicate predicate, File csvFile) throws IOException;
+
+	long countFacts(Predicate predicate) throws IOException;
+
+	@Override
+	void close();
+
+}
@@ -0,0 +1,103 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Facts of a predicate as columns of term identifiers. Rows are only appended, so the rows known before a
+// round of evaluation are a prefix of the table and the rows derived in the previous round are the range
+// [deltaStart, deltaEnd). Duplicates are rejected on insertion by an index over all columns, and the join
+// indexes over subsets of columns are brought up to date between rounds.
+class Relation {
+
+	private int arity;
+	private int[][] columns;
+	private int capacity = 16;
+	private int size = 0;
+	private RowIndex rowIndex;
+	private Map<Integer, RowIndex> joinIndexes = new LinkedHashMap<Integer, RowIndex>();
+
+	int deltaStart = 0;
+	int deltaEnd = 0;
+
+	Relation(int arity) {
+		this.arity = arity;
+		this.columns = new int[arity][capacity];
+		this.rowIndex = new RowIndex(this, (1 << arity) - 1);
+	}
+
+	int arity() {
+		return arity;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int get(int row, int column) {
+		return columns[column][row];
+	}
+
+	// Safe to call concurrently while no rows are added
+	boolean contains(int[] values, int offset) {
+		return rowIndex.contains(values, offset);
+	}
+
+	boolean add(int[] values, int offset) {
+		if (rowIndex.contains(values, offset))
+			return false;
+
+		if (size == capacity) {
+			capacity *= 2;
+			for (int column = 0; column < arity; column++)
+				columns[column] = Arrays.copyOf(columns[column], capacity);
+		}
+		for (int column = 0; column < arity; column++)
+			columns[column][size] = values[offset + column];
+		size++;
+		rowIndex.update();
+		return true;
+	}
+
+	// Index over the columns in the mask, which must be requested before evaluation starts
+	RowIndex joinIndex(int mask) {
+		return joinIndexes.computeIfAbsent(mask, m -> new RowIndex(this, m));
+	}
+
+	void updateJoinIndexes() {
+		for (RowIndex joinIndex : joinIndexes.values())
+			joinIndex.update();
+	}
+
+	// Replaces every term by its representative. The older rows that do not change stay first and everything
+	// else, rewritten, is considered new; the join indexes are rebuilt by the next update.
+	void canonicalise(int[] representatives) {
+		int[][] previousColumns = columns;
+		int previousSize = size;
+		int previousDeltaStart = deltaStart;
+		columns = new int[arity][capacity];
+		size = 0;
+		rowIndex.clear();
+		for (RowIndex joinIndex : joinIndexes.values())
+			joinIndex.clear();
+
+		int[] row = new int[arity];
+		for (int previousRow = 0; previousRow < previousDeltaStart; previousRow++)
+			if (canonicalRow(previousColumns, previousRow, representatives, row))
+				add(row, 0);
+		deltaStart = size;
+		for (int previousRow = 0; previousRow < previousSize; previousRow++)
+			if (!canonicalRow(previousColumns, previousRow, representatives, row) || previousRow >= previousDeltaStart)
+				add(row, 0);
+	}
+
+	private boolean canonicalRow(int[][] columns, int row, int[] representatives, int[] canonicalRow) {
+		boolean canonical = true;
+		for (int column = 0; column < arity; column++) {
+			canonicalRow[column] = representatives[columns[column][row]];
+			canonical &= canonicalRow[column] == columns[column][row];
+		}
+		return canonical;
+	}
+
+}
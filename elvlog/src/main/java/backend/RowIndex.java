@@ -0,0 +1,93 @@
+package backend;
+
+import java.util.Arrays;
+
+// Chained hash index of the rows of a relation over the columns in a mask. Rows are inserted in increasing
+// order at the front of their chain, so chains list rows from the newest to the oldest and a scan restricted
+// to a range of rows can stop once it passes the start of the range.
+class RowIndex {
+
+	private Relation relation;
+	private int[] keyColumns;
+	private int[] heads = new int[16];
+	private int[] next = new int[16];
+	private int indexedRows = 0;
+
+	RowIndex(Relation relation, int mask) {
+		this.relation = relation;
+		this.keyColumns = new int[Integer.bitCount(mask)];
+		int keyColumn = 0;
+		for (int column = 0; column < relation.arity(); column++)
+			if ((mask & (1 << column)) != 0)
+				keyColumns[keyColumn++] = column;
+		Arrays.fill(heads, -1);
+	}
+
+	int keySize() {
+		return keyColumns.length;
+	}
+
+	// Indexes the rows appended since the last update, rehashing when the table gets too full
+	void update() {
+		int size = relation.size();
+		if (size > heads.length / 4 * 3) {
+			int capacity = heads.length;
+			while (size > capacity / 4 * 3)
+				capacity *= 2;
+			heads = new int[capacity];
+			Arrays.fill(heads, -1);
+			indexedRows = 0;
+		}
+		if (next.length < size)
+			next = Arrays.copyOf(next, Math.max(size, next.length * 2));
+
+		for (; indexedRows < size; indexedRows++) {
+			int bucket = rowHash(indexedRows) & (heads.length - 1);
+			next[indexedRows] = heads[bucket];
+			heads[bucket] = indexedRows;
+		}
+	}
+
+	void clear() {
+		Arrays.fill(heads, -1);
+		indexedRows = 0;
+	}
+
+	// Key values are given in column order from the offset
+	int first(int[] key, int offset) {
+		return heads[hash(key, offset) & (heads.length - 1)];
+	}
+
+	int next(int row) {
+		return next[row];
+	}
+
+	boolean matches(int row, int[] key, int offset) {
+		for (int i = 0; i < keyColumns.length; i++)
+			if (relation.get(row, keyColumns[i]) != key[offset + i])
+				return false;
+		return true;
+	}
+
+	boolean contains(int[] key, int offset) {
+		for (int row = first(key, offset); row != -1; row = next[row])
+			if (matches(row, key, offset))
+				return true;
+		return false;
+	}
+
+	private int hash(int[] key, int offset) {
+		int hash = 0;
+		for (int i = 0; i < keyColumns.length; i++)
+			hash = (hash + key[offset + i]) * 0x9E3779B1;
+		return hash ^ (hash >>> 16);
+	}
+
+	private int rowHash(int row) {
+		int hash = 0;
+		for (int i = 0; i < keyColumns.length; i++)
+			hash = (hash + relation.get(row, keyColumns[i])) * 0x9E3779B1;
+		return hash ^ (hash >>> 16);
+	}
+
+}
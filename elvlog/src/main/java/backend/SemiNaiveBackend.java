@@ -0,0 +1,608 @@
+package backend;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.semanticweb.vlog4j.core.model.api.Constant;
+import org.semanticweb.vlog4j.core.model.api.DataSource;
+import org.semanticweb.vlog4j.core.model.api.DataSourceDeclaration;
+import org.semanticweb.vlog4j.core.model.api.Fact;
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.api.UniversalVariable;
+import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
+import org.semanticweb.vlog4j.core.reasoner.implementation.CsvFileDataSource;
+import org.semanticweb.vlog4j.core.reasoner.implementation.FileDataSource;
+import org.semanticweb.vlog4j.core.reasoner.implementation.RdfFileDataSource;
+
+import abox.NTriplesParser;
+import abox.PartitionedTripleLoader;
+import reasoner.SpecialPreds;
+
+// Semi-naive bottom-up evaluation of Datalog rules in the JVM. Terms are encoded as integers and the facts of
+// each predicate are kept in a columnar relation. In every round each rule is evaluated once for each of its
+// body atoms over the facts derived in the previous round, with the atoms before it restricted to older facts
+// so that no derivation is repeated. The work of a round is split into chunks of new facts evaluated on a
+// fork-join pool, and the rows derived by the chunks are merged sequentially at the end of the round. Rules
+// must be free of negation and existential variables, as the rules of the converter are; data sources are
+// loaded as VLog loads them, with the brackets of IRIs removed from RDF files.
+// With equality, owl:sameAs is handled natively as if congruence rules were given: its facts merge the classes
+// of a union-find over term identifiers after each round, every relation is rewritten to the representatives
+// of the classes (the rewritten facts count as new), and facts are only expanded back to all members of their
+// classes when they are exported or counted. Without it, owl:sameAs is an ordinary predicate, as for VLog.
+public class SemiNaiveBackend implements ReasoningBackend {
+
+	private static int chunkSize = 4096;
+
+	private KnowledgeBase kb;
+	private int threads;
+	private boolean equality;
+
+	private Map<String, Integer> termIds = new HashMap<String, Integer>();
+	private List<String> terms = new ArrayList<String>();
+	private Map<Predicate, Relation> relations = new LinkedHashMap<Predicate, Relation>();
+	private List<Plan> plans = new ArrayList<Plan>();
+	private Set<Predicate> stopPredicates = new HashSet<Predicate>();
+
+	// Union-find over term identifiers; the members of the classes with more than one are listed after reasoning
+	private int[] representatives = new int[16];
+	private Relation sameAs;
+	private Map<Integer, int[]> classMembers = new HashMap<Integer, int[]>();
+
+	private enum Range {
+		OLD, DELTA, ALL
+	}
+
+	public SemiNaiveBackend(KnowledgeBase kb, int threads) {
+		this(kb, threads, false);
+	}
+
+	public SemiNaiveBackend(KnowledgeBase kb, int threads, boolean equality) {
+		this.kb = kb;
+		this.threads = threads;
+		this.equality = equality;
+	}
+
+	@Override
+	public void stopWhenDerived(Set<Predicate> predicates) {
+		stopPredicates.addAll(predicates);
+	}
+
+	@Override
+	public void reason() throws IOException {
+		for (DataSourceDeclaration declaration : kb.getDataSourceDeclarations())
+			load(declaration.getPredicate(), declaration.getDataSource());
+		for (Fact fact : kb.getFacts()) {
+			int[] row = new int[fact.getTerms().size()];
+			for (int i = 0; i < row.length; i++)
+				row[i] = encode(fact.getTerms().get(i).getName());
+			relation(fact.getPredicate()).add(row, 0);
+		}
+
+		for (Rule rule : kb.getRules())
+			for (int deltaPosition = 0; deltaPosition < rule.getBody().getLiterals().size(); deltaPosition++)
+				plans.add(new Plan(rule, deltaPosition));
+
+		if (equality)
+			for (Map.Entry<Predicate, Relation> relation : relations.entrySet())
+				if (relation.getKey().getName().equals(SpecialPreds.owlSameAsPredName)
+						&& relation.getKey().getArity() == 2)
+					sameAs = relation.getValue();
+		for (Relation relation : relations.values())
+			relation.deltaStart = 0;
+		applyEqualities();
+		for (Relation relation : relations.values())
+			relation.deltaEnd = relation.size();
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			boolean derived = true;
+			while (derived && !stopped()) {
+				List<Callable<Derivations>> tasks = new ArrayList<Callable<Derivations>>();
+				for (Relation relation : relations.values())
+					relation.updateJoinIndexes();
+				for (Plan plan : plans) {
+					Relation deltaRelation = plan.atoms[0].relation;
+					for (int start = deltaRelation.deltaStart; start < deltaRelation.deltaEnd; start += chunkSize) {
+						int chunkStart = start;
+						int chunkEnd = Math.min(start + chunkSize, deltaRelation.deltaEnd);
+						tasks.add(() -> plan.evaluate(chunkStart, chunkEnd));
+					}
+				}
+
+				// The facts of the previous round only become old once the round has been evaluated
+				List<Future<Derivations>> results = pool.invokeAll(tasks);
+				for (Relation relation : relations.values())
+					relation.deltaStart = relation.deltaEnd;
+				for (Future<Derivations> derivations : results)
+					derivations.get().merge();
+				applyEqualities();
+
+				derived = false;
+				for (Relation relation : relations.values()) {
+					relation.deltaEnd = relation.size();
+					derived |= relation.deltaEnd > relation.deltaStart;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		Map<Integer, List<Integer>> members = new HashMap<Integer, List<Integer>>();
+		for (int term = 0; term < terms.size(); term++)
+			if (find(term) != term)
+				members.computeIfAbsent(find(term), t -> new ArrayList<Integer>()).add(term);
+		for (Map.Entry<Integer, List<Integer>> classMember : members.entrySet()) {
+			int[] memberIds = new int[classMember.getValue().size() + 1];
+			memberIds[0] = classMember.getKey();
+			for (int i = 1; i < memberIds.length; i++)
+				memberIds[i] = classMember.getValue().get(i - 1);
+			classMembers.put(classMember.getKey(), memberIds);
+		}
+	}
+
+	private boolean stopped() {
+		for (Predicate predicate : stopPredicates)
+			if (relations.containsKey(predicate) && relations.get(predicate).size() > 0)
+				return true;
+		return false;
+	}
+
+	// Merges the classes of the new owl:sameAs facts and rewrites the relations and the rules accordingly
+	private void applyEqualities() {
+		if (sameAs == null)
+			return;
+		boolean merged = false;
+		for (int row = sameAs.deltaStart; row < sameAs.size(); row++)
+			merged |= union(sameAs.get(row, 0), sameAs.get(row, 1));
+		if (!merged)
+			return;
+
+		for (int term = 0; term < terms.size(); term++)
+			representatives[term] = find(term);
+		for (Relation relation : relations.values())
+			relation.canonicalise(representatives);
+		boolean constantsChanged = false;
+		for (Plan plan : plans)
+			constantsChanged |= plan.canonicalise(representatives);
+		// Older facts may now match the constants of rule bodies, so all of them are reconsidered
+		if (constantsChanged)
+			for (Relation relation : relations.values())
+				relation.deltaStart = 0;
+	}
+
+	private int find(int term) {
+		while (representatives[term] != term) {
+			representatives[term] = representatives[representatives[term]];
+			term = representatives[term];
+		}
+		return term;
+	}
+
+	// The smallest identifier represents the class
+	private boolean union(int first, int second) {
+		int firstRepresentative = find(first);
+		int secondRepresentative = find(second);
+		if (firstRepresentative == secondRepresentative)
+			return false;
+		representatives[Math.max(firstRepresentative, secondRepresentative)] = Math.min(firstRepresentative,
+				secondRepresentative);
+		return true;
+	}
+
+	@Override
+	public void exportFacts(Predicate predicate, File csvFile) throws IOException {
+		Relation relation = relations.get(predicate);
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8), 1 << 16)) {
+			if (relation == null)
+				return;
+			int[] values = new int[relation.arity()];
+			for (int row = 0; row < relation.size(); row++)
+				writeExpanded(writer, relation, row, 0, values);
+		}
+	}
+
+	// Writes the facts represented by the row, one for every combination of members of the classes of its terms
+	private void writeExpanded(Writer writer, Relation relation, int row, int column, int[] values)
+			throws IOException {
+		if (column == values.length) {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0)
+					writer.write(',');
+				writer.write(csvValue(terms.get(values[i])));
+			}
+			writer.write('\n');
+			return;
+		}
+
+		int[] members = classMembers.get(relation.get(row, column));
+		if (members == null) {
+			values[column] = relation.get(row, column);
+			writeExpanded(writer, relation, row, column + 1, values);
+		} else
+			for (int member : members) {
+				values[column] = member;
+				writeExpanded(writer, relation, row, column + 1, values);
+			}
+	}
+
+	@Override
+	public long countFacts(Predicate predicate) {
+		Relation relation = relations.get(predicate);
+		if (relation == null)
+			return 0;
+		if (classMembers.isEmpty())
+			return relation.size();
+
+		long facts = 0;
+		for (int row = 0; row < relation.size(); row++) {
+			long rowFacts = 1;
+			for (int column = 0; column < relation.arity(); column++) {
+				int[] members = classMembers.get(relation.get(row, column));
+				rowFacts *= members == null ? 1 : members.length;
+			}
+			facts += rowFacts;
+		}
+		return facts;
+	}
+
+	@Override
+	public void close() {
+		relations.clear();
+		plans.clear();
+		classMembers.clear();
+		termIds.clear();
+		terms.clear();
+	}
+
+	private void load(Predicate predicate, DataSource dataSource) throws IOException {
+		if (!(dataSource instanceof RdfFileDataSource) && !(dataSource instanceof CsvFileDataSource))
+			throw new IllegalArgumentException("Data source not supported by the semi-naive engine: " + dataSource);
+		boolean rdf = dataSource instanceof RdfFileDataSource;
+		if (rdf && predicate.getArity() != 3)
+			throw new IllegalArgumentException("RDF data sources need a ternary predicate: " + predicate);
+
+		Relation relation = relation(predicate);
+		int[] row = new int[predicate.getArity()];
+		File dataFile = ((FileDataSource) dataSource).getFile();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				PartitionedTripleLoader.openDataFile(dataFile), StandardCharsets.UTF_8), 1 << 16)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				List<String> values = rdf ? rdfValues(line) : parseCsvLine(line);
+				if (values == null || values.size() != row.length)
+					continue;
+				for (int i = 0; i < row.length; i++)
+					row[i] = encode(values.get(i));
+				relation.add(row, 0);
+			}
+		}
+	}
+
+	private static List<String> rdfValues(String line) {
+		String[] triple = NTriplesParser.parseTriple(line);
+		if (triple == null)
+			return null;
+		List<String> values = new ArrayList<String>();
+		for (String term : triple)
+			values.add(term.startsWith("<") ? term.substring(1, term.length() - 1) : term);
+		return values;
+	}
+
+	private Relation relation(Predicate predicate) {
+		return relations.computeIfAbsent(predicate, p -> new Relation(p.getArity()));
+	}
+
+	private int encode(String term) {
+		Integer id = termIds.get(term);
+		if (id == null) {
+			id = terms.size();
+			termIds.put(term, id);
+			terms.add(term);
+			if (id == representatives.length)
+				representatives = Arrays.copyOf(representatives, id * 2);
+			representatives[id] = id;
+		}
+		return id;
+	}
+
+	private static String csvValue(String term) {
+		if (term.indexOf(',') < 0 && term.indexOf('"') < 0)
+			return term;
+		return '"' + term.replace("\"", "\"\"") + '"';
+	}
+
+	private static List<String> parseCsvLine(String line) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char character = line.charAt(i);
+			if (quoted) {
+				if (character != '"')
+					value.append(character);
+				else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+					value.append(line.charAt(++i));
+				else
+					quoted = false;
+			} else if (character == '"' && value.length() == 0)
+				quoted = true;
+			else if (character == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else
+				value.append(character);
+		}
+		values.add(value.toString());
+		return values;
+	}
+
+	// Terms of atoms are encoded as constant identifiers, or as -(i + 1) for the i-th variable of the rule
+	private class PlanAtom {
+		private Relation relation;
+		private Range range;
+		private int[] terms;
+		// Whether the column binds its variable or checks an earlier binding
+		private boolean[] binds;
+		// Index over the columns bound before the atom and the terms giving their values
+		private RowIndex index;
+		private int[] keyTerms;
+	}
+
+	// A rule evaluated over the new facts of one of its body atoms, which is placed first; the other atoms
+	// follow greedily, those with most bound columns and fewest unbound ones first
+	private class Plan {
+		private PlanAtom[] atoms;
+		private Relation[] headRelations;
+		private int[][] headTerms;
+		private Map<Term, Integer> variables = new HashMap<Term, Integer>();
+
+		Plan(Rule rule, int deltaPosition) {
+			List<Literal> body = rule.getBody().getLiterals();
+			for (Literal bodyAtom : body)
+				if (bodyAtom.isNegated())
+					throw new IllegalArgumentException("Negation is not supported by the semi-naive engine: " + rule);
+
+			List<Integer> pendingPositions = new ArrayList<Integer>();
+			for (int position = 0; position < body.size(); position++)
+				if (position != deltaPosition)
+					pendingPositions.add(position);
+			List<Integer> orderedPositions = new ArrayList<Integer>();
+			orderedPositions.add(deltaPosition);
+			Set<Term> boundVariables = new HashSet<Term>(body.get(deltaPosition).getTerms());
+			while (!pendingPositions.isEmpty()) {
+				int nextPosition = -1;
+				int nextBound = -1;
+				int nextUnbound = 0;
+				for (int position : pendingPositions) {
+					int bound = 0;
+					int unbound = 0;
+					for (Term term : body.get(position).getTerms())
+						if (!(term instanceof UniversalVariable) || boundVariables.contains(term))
+							bound++;
+						else
+							unbound++;
+					if (bound > nextBound || bound == nextBound && unbound < nextUnbound) {
+						nextPosition = position;
+						nextBound = bound;
+						nextUnbound = unbound;
+					}
+				}
+				pendingPositions.remove(Integer.valueOf(nextPosition));
+				orderedPositions.add(nextPosition);
+				boundVariables.addAll(body.get(nextPosition).getTerms());
+			}
+
+			atoms = new PlanAtom[orderedPositions.size()];
+			for (int i = 0; i < atoms.length; i++) {
+				int position = orderedPositions.get(i);
+				atoms[i] = planAtom(body.get(position), i > 0);
+				atoms[i].range = position == deltaPosition ? Range.DELTA
+						: position < deltaPosition ? Range.OLD : Range.ALL;
+			}
+
+			List<PositiveLiteral> head = rule.getHead().getLiterals();
+			headRelations = new Relation[head.size()];
+			headTerms = new int[head.size()][];
+			for (int i = 0; i < head.size(); i++) {
+				headRelations[i] = relation(head.get(i).getPredicate());
+				headTerms[i] = new int[head.get(i).getTerms().size()];
+				for (int column = 0; column < headTerms[i].length; column++) {
+					Term term = head.get(i).getTerms().get(column);
+					if (term instanceof Constant)
+						headTerms[i][column] = encode(term.getName());
+					else if (term instanceof UniversalVariable && variables.containsKey(term))
+						headTerms[i][column] = -variables.get(term) - 1;
+					else
+						throw new IllegalArgumentException(
+								"Only safe Datalog rules are supported by the semi-naive engine: " + rule);
+				}
+			}
+		}
+
+		private PlanAtom planAtom(Literal literal, boolean indexed) {
+			PlanAtom atom = new PlanAtom();
+			atom.relation = relation(literal.getPredicate());
+			atom.terms = new int[literal.getTerms().size()];
+			atom.binds = new boolean[atom.terms.length];
+			int mask = 0;
+			List<Integer> keyTerms = new ArrayList<Integer>();
+			for (int column = 0; column < atom.terms.length; column++) {
+				Term term = literal.getTerms().get(column);
+				if (term instanceof Constant)
+					atom.terms[column] = encode(term.getName());
+				else if (term instanceof UniversalVariable) {
+					atom.binds[column] = !variables.containsKey(term);
+					if (atom.binds[column])
+						variables.put(term, variables.size());
+					atom.terms[column] = -variables.get(term) - 1;
+				} else
+					throw new IllegalArgumentException(
+							"Only Datalog rules are supported by the semi-naive engine: " + literal);
+
+				// Columns bound before the atom; repeated variables within the atom are checked on the rows
+				boolean boundBefore = term instanceof Constant || !atom.binds[column]
+						&& !bindsEarlierColumn(atom, column);
+				if (indexed && boundBefore) {
+					mask |= 1 << column;
+					keyTerms.add(atom.terms[column]);
+				}
+			}
+			if (mask != 0) {
+				atom.index = atom.relation.joinIndex(mask);
+				atom.keyTerms = new int[keyTerms.size()];
+				for (int i = 0; i < atom.keyTerms.length; i++)
+					atom.keyTerms[i] = keyTerms.get(i);
+			}
+			return atom;
+		}
+
+		private boolean bindsEarlierColumn(PlanAtom atom, int column) {
+			for (int earlierColumn = 0; earlierColumn < column; earlierColumn++)
+				if (atom.binds[earlierColumn] && atom.terms[earlierColumn] == atom.terms[column])
+					return true;
+			return false;
+		}
+
+		// Replaces constants by their representatives and tells whether a constant of the body changed
+		boolean canonicalise(int[] representatives) {
+			boolean changed = false;
+			for (PlanAtom atom : atoms) {
+				changed |= SemiNaiveBackend.canonicalise(atom.terms, representatives);
+				if (atom.keyTerms != null)
+					SemiNaiveBackend.canonicalise(atom.keyTerms, representatives);
+			}
+			for (int[] terms : headTerms)
+				SemiNaiveBackend.canonicalise(terms, representatives);
+			return changed;
+		}
+
+		Derivations evaluate(int deltaStart, int deltaEnd) {
+			Derivations derivations = new Derivations(this);
+			int[][] keys = new int[atoms.length][];
+			for (int i = 0; i < atoms.length; i++)
+				keys[i] = atoms[i].keyTerms == null ? null : new int[atoms[i].keyTerms.length];
+			join(0, new int[variables.size()], keys, deltaStart, deltaEnd, derivations);
+			return derivations;
+		}
+
+		private void join(int depth, int[] binding, int[][] keys, int deltaStart, int deltaEnd,
+				Derivations derivations) {
+			if (depth == atoms.length) {
+				derivations.add(binding);
+				return;
+			}
+
+			PlanAtom atom = atoms[depth];
+			int start = atom.range == Range.DELTA ? deltaStart : 0;
+			int end = atom.range == Range.DELTA ? deltaEnd
+					: atom.range == Range.OLD ? atom.relation.deltaStart : atom.relation.deltaEnd;
+			if (atom.index == null) {
+				for (int row = start; row < end; row++)
+					if (bind(atom, row, binding))
+						join(depth + 1, binding, keys, deltaStart, deltaEnd, derivations);
+				return;
+			}
+
+			int[] key = keys[depth];
+			for (int i = 0; i < key.length; i++)
+				key[i] = value(atom.keyTerms[i], binding);
+			// Chains go from newer to older rows
+			for (int row = atom.index.first(key, 0); row >= start; row = atom.index.next(row))
+				if (row < end && atom.index.matches(row, key, 0) && bind(atom, row, binding))
+					join(depth + 1, binding, keys, deltaStart, deltaEnd, derivations);
+		}
+
+		private boolean bind(PlanAtom atom, int row, int[] binding) {
+			for (int column = 0; column < atom.terms.length; column++) {
+				int value = atom.relation.get(row, column);
+				int term = atom.terms[column];
+				if (atom.binds[column])
+					binding[-term - 1] = value;
+				else if (value(term, binding) != value)
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private static boolean canonicalise(int[] terms, int[] representatives) {
+		boolean changed = false;
+		for (int i = 0; i < terms.length; i++)
+			if (terms[i] >= 0 && representatives[terms[i]] != terms[i]) {
+				terms[i] = representatives[terms[i]];
+				changed = true;
+			}
+		return changed;
+	}
+
+	private static int value(int term, int[] binding) {
+		return term >= 0 ? term : binding[-term - 1];
+	}
+
+	// Rows derived by a task for each head atom of its rule, without the rows known before the round; the
+	// lengths are numbers of rows
+	private class Derivations {
+		private Plan plan;
+		private int[][] rows;
+		private int[] lengths;
+
+		Derivations(Plan plan) {
+			this.plan = plan;
+			this.rows = new int[plan.headRelations.length][];
+			this.lengths = new int[plan.headRelations.length];
+		}
+
+		void add(int[] binding) {
+			for (int i = 0; i < rows.length; i++) {
+				int[] headTerms = plan.headTerms[i];
+				int offset = lengths[i] * headTerms.length;
+				if (rows[i] == null)
+					rows[i] = new int[Math.max(16, headTerms.length * 16)];
+				else if (offset + headTerms.length > rows[i].length)
+					rows[i] = Arrays.copyOf(rows[i], rows[i].length * 2);
+				for (int column = 0; column < headTerms.length; column++)
+					rows[i][offset + column] = value(headTerms[column], binding);
+				if (!plan.headRelations[i].contains(rows[i], offset))
+					lengths[i]++;
+			}
+		}
+
+		void merge() {
+			for (int i = 0; i < rows.length; i++)
+				for (int row = 0; row < lengths[i]; row++)
+					plan.headRelations[i].add(rows[i], row * plan.headTerms[i].length);
+		}
+	}
+
+}
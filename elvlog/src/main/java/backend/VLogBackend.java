@@ -0,0 +1,94 @@
+package backend;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
+import org.semanticweb.vlog4j.core.reasoner.Reasoner;
+import org.semanticweb.vlog4j.core.reasoner.implementation.VLogReasoner;
+
+// VLog through its JNI bindings; exports are serialised on the reasoner
+public class VLogBackend implements ReasoningBackend {
+
+	private Reasoner reasoner;
+
+	public VLogBackend(KnowledgeBase kb) {
+		reasoner = new VLogReasoner(kb);
+	}
+
+	// VLog cannot be interrupted
+	@Override
+	public void stopWhenDerived(Set<Predicate> predicates) {
+	}
+
+	@Override
+	public void reason() throws IOException {
+		reasoner.reason();
+	}
+
+	@Override
+	public void exportFacts(Predicate predicate, File csvFile) throws IOException {
+		synchronized (reasoner) {
+			reasoner.exportQueryAnswersToCsv(allVariablesLiteral(predicate), csvFile.getPath(), true);
+		}
+	}
+
+	// vlog4j 0.5 cannot count query answers without iterating over them, so they are exported to a temporary
+	// file and its lines counted
+	@Override
+	public long countFacts(Predicate predicate) throws IOException {
+		File scratchFile = File.createTempFile("elvlog-count", ".csv");
+		try {
+			return countFacts(predicate, scratchFile);
+		} finally {
+			scratchFile.delete();
+		}
+	}
+
+	public long countFacts(Predicate predicate, File scratchFile) throws IOException {
+		exportFacts(predicate, scratchFile);
+		return countLines(scratchFile);
+	}
+
+	@Override
+	public void close() {
+		reasoner.close();
+	}
+
+	private static PositiveLiteral allVariablesLiteral(Predicate predicate) {
+		List<Term> variables = new ArrayList<Term>();
+		for (int i = 0; i < predicate.getArity(); i++)
+			variables.add(Expressions.makeUniversalVariable("VX" + Integer.toString(i)));
+		return Expressions.makePositiveLiteral(predicate, variables);
+	}
+
+	private static long countLines(File file) throws IOException {
+		if (!file.isFile())
+			return 0;
+
+		long lines = 0;
+		byte[] buffer = new byte[1 << 20];
+		byte last = '\n';
+		try (InputStream input = new FileInputStream(file)) {
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++)
+					if (buffer[i] == '\n')
+						lines++;
+				if (read > 0)
+					last = buffer[read - 1];
+			}
+		}
+		return last == '\n' ? lines : lines + 1;
+	}
+
+}
@@ -0,0 +1,249 @@
+package launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.implementation.DataSourceDeclarationImpl;
+import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
+import org.semanticweb.vlog4j.core.reasoner.implementation.RdfFileDataSource;
+
+import backend.ReasoningBackend;
+import backend.VLogBackend;
+import materialisation.FactCounter;
+import reasoner.OWLToRulesConverter;
+import reasoner.SpecialPreds;
+
+// Runs the (TBox, ABox) pairs of a manifest in a single JVM. Each TBox is loaded and converted once and its
+// rules are shared by every pair that uses it, while each pair gets its own knowledge base and VLogReasoner.
+// The number of pairs reasoned concurrently is bounded by the cores and by the memory set aside for each one.
+public class BatchLauncher {
+
+	private static long defaultJobMegabytes = 2048;
+
+	private ConcurrentHashMap<File, CompletableFuture<ConvertedTBox>> convertedTBoxes =
+			new ConcurrentHashMap<File, CompletableFuture<ConvertedTBox>>();
+
+	// Manifest: one "TBox<tab>ABox" pair per line, paths relative to the manifest; # starts a comment
+	public static void main(String[] arguments) throws IOException, InterruptedException {
+		File manifestFile = new File(arguments[0]);
+
+		int threads = 0;
+		long jobMegabytes = defaultJobMegabytes;
+		File reportFile = null;
+		for (int i = 1; i < arguments.length; i++)
+			switch (arguments[i]) {
+			case "--threads":
+				threads = Integer.parseInt(arguments[++i]);
+				break;
+			case "--job-memory":
+				jobMegabytes = Long.parseLong(arguments[++i]);
+				break;
+			case "--report":
+				reportFile = new File(arguments[++i]);
+				break;
+			default:
+				System.out.println("WARNING!!! Unrecognized argument: " + arguments[i]);
+				break;
+			}
+		if (threads <= 0)
+			threads = workerCount(jobMegabytes * 1024 * 1024);
+
+		List<File[]> pairs = readManifest(manifestFile);
+		System.out.println(" > Running " + pairs.size() + " pairs on " + threads + " workers");
+		List<JobResult> results = new BatchLauncher().run(pairs, threads);
+
+		int failed = 0;
+		for (JobResult result : results)
+			if (result.error != null)
+				failed++;
+		System.out.println(" > Finished: " + (results.size() - failed) + " succeeded, " + failed + " failed");
+
+		if (reportFile != null)
+			writeJson(results, reportFile);
+	}
+
+	public List<JobResult> run(List<File[]> pairs, int threads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<JobResult>> futures = new ArrayList<Future<JobResult>>();
+			for (File[] pair : pairs)
+				futures.add(executor.submit(() -> run(pair[0], pair[1])));
+
+			List<JobResult> results = new ArrayList<JobResult>();
+			for (Future<JobResult> future : futures)
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private JobResult run(File tBoxFile, File aBoxFile) {
+		JobResult result = new JobResult(tBoxFile, aBoxFile);
+		long jobStart = System.nanoTime();
+		try {
+			ConvertedTBox tBox = convertedTBox(tBoxFile);
+			result.conversionNanos = tBox.conversionNanos;
+			result.rules = tBox.rules.size();
+
+			KnowledgeBase kb = new KnowledgeBase();
+			kb.addStatements(tBox.rules);
+			Set<Predicate> predicates = new HashSet<Predicate>(tBox.predicates);
+			kb.addStatements(OWLToRulesConverter.loadingRules(predicates));
+			kb.addStatement(new DataSourceDeclarationImpl(SpecialPreds.triplePred, new RdfFileDataSource(aBoxFile)));
+			predicates.add(SpecialPreds.triplePred);
+
+			try (ReasoningBackend backend = new VLogBackend(kb)) {
+				long reasoningStart = System.nanoTime();
+				backend.reason();
+				result.reasoningNanos = System.nanoTime() - reasoningStart;
+
+				// Workers are already running in parallel, so facts are counted sequentially
+				for (long count : new FactCounter(backend, 1).count(predicates).values())
+					result.facts += count;
+			}
+		} catch (Exception e) {
+			result.error = e.toString();
+			System.out.println("WARNING!!! Reasoning over " + tBoxFile + " and " + aBoxFile + " failed: " + e);
+		}
+		result.totalNanos = System.nanoTime() - jobStart;
+		System.out.println(" > " + tBoxFile + " | " + aBoxFile + ": " + result.facts + " facts in "
+				+ result.totalNanos / 1000000000f);
+		return result;
+	}
+
+	// The first pair that needs a TBox converts it while the others wait for the shared result
+	private ConvertedTBox convertedTBox(File tBoxFile) throws Exception {
+		CompletableFuture<ConvertedTBox> conversion = new CompletableFuture<ConvertedTBox>();
+		CompletableFuture<ConvertedTBox> existingConversion = convertedTBoxes.putIfAbsent(tBoxFile, conversion);
+		if (existingConversion != null)
+			conversion = existingConversion;
+		else
+			try {
+				long conversionStart = System.nanoTime();
+				OWLOntology ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(tBoxFile);
+				ConvertedTBox tBox = new ConvertedTBox();
+				OWLToRulesConverter owlToRulesTransformer = new OWLToRulesConverter(ontology, tBox.rules::add, false);
+				tBox.predicates = owlToRulesTransformer.getPredicates();
+				tBox.conversionNanos = System.nanoTime() - conversionStart;
+				conversion.complete(tBox);
+			} catch (Exception e) {
+				conversion.completeExceptionally(e);
+			}
+
+		try {
+			return conversion.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	// VLog allocates its tables natively, so the free physical memory bounds the workers rather than the heap
+	static int workerCount(long jobBytes) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		long memory = Runtime.getRuntime().maxMemory();
+		java.lang.management.OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+		if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean)
+			memory = ((com.sun.management.OperatingSystemMXBean) operatingSystem).getFreePhysicalMemorySize();
+		return (int) Math.max(1, Math.min(cores, memory / jobBytes));
+	}
+
+	static List<File[]> readManifest(File manifestFile) throws IOException {
+		File baseDirectory = manifestFile.getAbsoluteFile().getParentFile();
+		List<File[]> pairs = new ArrayList<File[]>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty() || line.trim().startsWith("#"))
+					continue;
+				String[] fields = line.split("\t");
+				if (fields.length < 2) {
+					System.out.println("WARNING!!! Ignoring manifest line without a TBox and an ABox: " + line);
+					continue;
+				}
+				pairs.add(new File[] { resolve(baseDirectory, fields[0].trim()),
+						resolve(baseDirectory, fields[1].trim()) });
+			}
+		}
+		return pairs;
+	}
+
+	private static File resolve(File baseDirectory, String path) {
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(baseDirectory, path);
+	}
+
+	private static void writeJson(List<JobResult> results, File reportFile) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8)) {
+			writer.write("{\n  \"jobs\": [");
+			for (int i = 0; i < results.size(); i++) {
+				JobResult result = results.get(i);
+				writer.write(i == 0 ? "\n" : ",\n");
+				writer.write("    {\n");
+				writer.write("      \"tbox\": " + Instrumentation.jsonString(result.tBoxFile.getPath()) + ",\n");
+				writer.write("      \"abox\": " + Instrumentation.jsonString(result.aBoxFile.getPath()) + ",\n");
+				writer.write("      \"status\": " + (result.error == null ? "\"ok\"" : "\"failed\"") + ",\n");
+				if (result.error != null)
+					writer.write("      \"error\": " + Instrumentation.jsonString(result.error) + ",\n");
+				writer.write("      \"rules\": " + result.rules + ",\n");
+				writer.write("      \"conversionNanos\": " + result.conversionNanos + ",\n");
+				writer.write("      \"reasoningNanos\": " + result.reasoningNanos + ",\n");
+				writer.write("      \"totalNanos\": " + result.totalNanos + ",\n");
+				writer.write("      \"facts\": " + result.facts + "\n");
+				writer.write("    }");
+			}
+			writer.write("\n  ]\n}\n");
+		}
+	}
+
+	private static class ConvertedTBox {
+		private List<Rule> rules = new ArrayList<Rule>();
+		private Set<Predicate> predicates;
+		private long conversionNanos;
+	}
+
+	// The conversion time is that of the shared conversion of the TBox
+	public static class JobResult {
+		private File tBoxFile;
+		private File aBoxFile;
+		private String error;
+		private long rules;
+		private long conversionNanos;
+		private long reasoningNanos;
+		private long totalNanos;
+		private long facts;
+
+		JobResult(File tBoxFile, File aBoxFile) {
+			this.tBoxFile = tBoxFile;
+			this.aBoxFile = aBoxFile;
+		}
+	}
+
+}
@@ -3,86 +3,413 @@ package launcher;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.vlog4j.core.model.api.DataSource;
+import org.semanticweb.vlog4j.core.model.api.DataSourceDeclaration;
 import org.semanticweb.vlog4j.core.model.api.Predicate;
 import org.semanticweb.vlog4j.core.model.api.Rule;
-import org.semanticweb.vlog4j.core.model.api.Term;
 import org.semanticweb.vlog4j.core.model.implementation.DataSourceDeclarationImpl;
 import org.semanticweb.vlog4j.core.model.implementation.Expressions;
 import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
-import org.semanticweb.vlog4j.core.reasoner.QueryResultIterator;
-import org.semanticweb.vlog4j.core.reasoner.Reasoner;
 import org.semanticweb.vlog4j.core.reasoner.implementation.RdfFileDataSource;
-import org.semanticweb.vlog4j.core.reasoner.implementation.VLogReasoner;
 
+import abox.PartitionedTripleLoader;
+import abox.TripleStore;
+import backend.ReasoningBackend;
+import materialisation.ConsistencyChecker;
+import materialisation.FactCounter;
+import materialisation.FactExporter;
+import materialisation.MaterialisationState;
+import materialisation.PartitionSummary;
+import materialisation.ReasoningProfiler;
+import reasoner.Filter;
 import reasoner.OWLToRulesConverter;
+import reasoner.PartitionAnalyser;
+import reasoner.RelevanceAnalyser;
+import reasoner.RuleProvenance;
+import reasoner.RuleSetCache;
+import reasoner.RuleSetOptimiser;
 import reasoner.SpecialPreds;
 
 public class ELVLogLauncher {
 
-	private static Reasoner reasoner;
+	private static ReasoningBackend backend;
+	private static Instrumentation instrumentation = new Instrumentation();
+	private static long start;
 
 	public static void main(String[] arguments) throws OWLOntologyCreationException, IOException {
 		String owlOntologyFilePath = arguments[0];
 		String dataFilePath = arguments[1];
 
-		// Loading TBox
-		long start = System.nanoTime();
-		System.out.println(" > Loading TBox: " + nanotoSeconds(System.nanoTime() - start));
-		File owlOntologyFile = new File(owlOntologyFilePath);
-		OWLOntology ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(owlOntologyFile);
+		File cacheDirectory = null;
+		File partitionDirectory = null;
+		File storeFile = null;
+		File stateDirectory = null;
+		File exportDirectory = null;
+		FactExporter.Format exportFormat = FactExporter.Format.NTRIPLES;
+		File reportFile = null;
+		File provenanceFile = null;
+		int profileStages = 0;
+		ReasoningBackend.Engine engine = ReasoningBackend.Engine.VLOG;
+		boolean optimise = false;
+		boolean checkConsistency = false;
+		Set<String> goalNames = null;
+		int workers = 1;
+		File workerOutputFile = null;
+		List<String> workerOptions = new ArrayList<String>();
+		for (int i = 2; i < arguments.length; i++)
+			switch (arguments[i]) {
+			case "--cache":
+				cacheDirectory = new File(arguments[++i]);
+				break;
+			case "--partition":
+				partitionDirectory = new File(arguments[++i]);
+				break;
+			case "--store":
+				storeFile = new File(arguments[++i]);
+				break;
+			case "--incremental":
+				stateDirectory = new File(arguments[++i]);
+				break;
+			case "--export":
+				exportDirectory = new File(arguments[++i]);
+				break;
+			case "--export-format":
+				exportFormat = FactExporter.Format.valueOf(arguments[++i].toUpperCase());
+				break;
+			case "--report":
+				reportFile = new File(arguments[++i]);
+				break;
+			case "--provenance":
+				provenanceFile = new File(arguments[++i]);
+				break;
+			case "--profile":
+				profileStages = Integer.parseInt(arguments[++i]);
+				break;
+			case "--engine":
+				engine = ReasoningBackend.Engine.valueOf(arguments[++i].toUpperCase().replace('-', '_'));
+				break;
+			case "--optimise":
+				optimise = true;
+				break;
+			case "--consistency":
+				checkConsistency = true;
+				break;
+			case "--goal":
+				goalNames = new HashSet<String>();
+				for (String goalName : arguments[++i].split(","))
+					goalNames.add(goalName.startsWith("<") ? goalName.trim() : "<" + goalName.trim() + ">");
+				break;
+			case "--workers":
+				workers = Integer.parseInt(arguments[++i]);
+				break;
+			case "--worker-output":
+				workerOutputFile = new File(arguments[++i]);
+				break;
+			default:
+				System.out.println("WARNING!!! Unrecognized argument: " + arguments[i]);
+				break;
+			}
+
+		// Workers get the options that do not write files of the coordinator
+		for (int i = 2; i < arguments.length; i++)
+			if (arguments[i].equals("--cache") || arguments[i].equals("--export-format")
+					|| arguments[i].equals("--engine") || arguments[i].equals("--goal")) {
+				workerOptions.add(arguments[i]);
+				workerOptions.add(arguments[++i]);
+			} else if (arguments[i].equals("--optimise"))
+				workerOptions.add(arguments[i]);
+		if (workers > 1 && (storeFile != null || stateDirectory != null || profileStages > 0 || checkConsistency
+				|| (exportDirectory != null && exportFormat != FactExporter.Format.NTRIPLES))) {
+			System.out.println("WARNING!!! --workers cannot be combined with --store, --incremental, --profile, "
+					+ "--consistency or columnar exports; using a single process.");
+			workers = 1;
+		}
 
-		// Transforming TBox Axioms into Rules
-		System.out.println(" > Transforming TBox Axioms into Rules: " + nanotoSeconds(System.nanoTime() - start));
-		OWLToRulesConverter owlToRulesTransformer = new OWLToRulesConverter(ontology);
-		Set<Rule> ruleSet = owlToRulesTransformer.getRules();
+		start = System.nanoTime();
+		File owlOntologyFile = new File(owlOntologyFilePath);
 		final KnowledgeBase kb = new KnowledgeBase();
-		kb.addStatements(ruleSet);
+		Set<Predicate> predicates;
+
+		// The consistency check only needs the rules that can derive owl:Nothing
+		if (checkConsistency) {
+			if (goalNames != null)
+				System.out.println("WARNING!!! The consistency check replaces the goals by owl:Nothing.");
+			goalNames = new HashSet<String>();
+			goalNames.add(SpecialPreds.owlNothingPredName);
+		}
+
+		// When optimising or pruning, the rules are only added once the rule set is complete
+		boolean collectRules = optimise || goalNames != null || workers > 1;
+		List<Rule> rules = new ArrayList<Rule>();
+		Consumer<Rule> ruleConsumer = collectRules ? rules::add : kb::addStatement;
+		if (goalNames != null && stateDirectory != null) {
+			System.out.println("WARNING!!! Partial materialisations are not saved; ignoring --incremental.");
+			stateDirectory = null;
+		}
+
+		// Profiling and the consistency check trace back to axioms through the provenance, which is then kept
+		// in memory
+		RuleProvenance provenance = null;
+		RuleSetCache ruleSetCache = null;
+		File ruleSetCacheFile = null;
+		if (cacheDirectory != null) {
+			ruleSetCache = new RuleSetCache(cacheDirectory);
+			ruleSetCacheFile = ruleSetCache.cacheFile(owlOntologyFile);
+		}
+
+		// Loading TBox, unless its documents are known to the rule cache; otherwise the cached rules are looked
+		// up by the axioms of the import closure
+		OWLOntology ontology = null;
+		if (ruleSetCacheFile == null) {
+			startPhase("Loading TBox");
+			ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(owlOntologyFile);
+			instrumentation.record("axioms", ontology.getAxiomCount());
+			if (ruleSetCache != null) {
+				ruleSetCacheFile = ruleSetCache.cacheFile(ontology);
+				ruleSetCache.recordDocuments(owlOntologyFile, ontology, ruleSetCacheFile);
+			}
+		}
+
+		if (ruleSetCacheFile != null && ruleSetCacheFile.isFile()) {
+			// Loading cached rules
+			startPhase("Loading Cached Rules");
+			if (provenanceFile != null || profileStages > 0 || checkConsistency)
+				System.out.println("WARNING!!! No rule provenance is available for cached rules.");
+			predicates = ruleSetCache.load(ruleSetCacheFile, ruleConsumer);
+			instrumentation.record("rules", collectRules ? rules.size() : kb.getRules().size());
+		} else {
+			// Transforming TBox Axioms into Rules
+			startPhase("Transforming TBox Axioms into Rules");
+			long filterNanos = Filter.getFilterNanos();
+			OWLToRulesConverter owlToRulesTransformer;
+			if (provenanceFile != null)
+				provenance = new RuleProvenance(provenanceFile);
+			else if (profileStages > 0 || checkConsistency)
+				provenance = new RuleProvenance();
+			try {
+				if (ruleSetCache == null)
+					owlToRulesTransformer = new OWLToRulesConverter(ontology, ruleConsumer, false, provenance);
+				else
+					try (RuleSetCache.Writer ruleSetCacheWriter = ruleSetCache.writer(ruleSetCacheFile)) {
+						owlToRulesTransformer = new OWLToRulesConverter(ontology,
+								ruleConsumer.andThen(ruleSetCacheWriter), false, provenance);
+						ruleSetCacheWriter.commit(owlToRulesTransformer.getPredicates());
+					}
+			} finally {
+				if (provenance != null)
+					provenance.close();
+			}
+			predicates = owlToRulesTransformer.getPredicates();
+			instrumentation.record("filterThreadNanos", Filter.getFilterNanos() - filterNanos);
+			instrumentation.record("ignoredAxioms", owlToRulesTransformer.getIgnoredAxiomCount());
+			instrumentation.record("rules", collectRules ? rules.size() : kb.getRules().size());
+			instrumentation.record("transformedAxiomsPerType", owlToRulesTransformer.getAxiomCounts());
+			instrumentation.record("rulesPerAxiomType", owlToRulesTransformer.getRuleCounts());
+		}
+
+		// Pruning rules that cannot contribute to the goal predicates
+		if (goalNames != null) {
+			startPhase("Pruning Rules for Goals");
+			Set<Predicate> goals = new HashSet<Predicate>();
+			for (Predicate predicate : predicates)
+				if (goalNames.contains(predicate.getName()))
+					goals.add(predicate);
+			if (goals.size() < goalNames.size())
+				System.out.println("WARNING!!! Some goals are not predicates of the rule set: " + goalNames);
+			RelevanceAnalyser relevanceAnalyser = new RelevanceAnalyser();
+			List<Rule> relevantRules = relevanceAnalyser.prune(rules, goals);
+			rules.clear();
+			rules.addAll(relevantRules);
+			predicates.retainAll(relevanceAnalyser.getRelevantPredicates());
+			relevanceAnalyser.printReport();
+			instrumentation.record("prunedRules", relevanceAnalyser.getPrunedRuleCount());
+			instrumentation.record("relevantPredicates", predicates.size());
+		}
+
+		// Tracing owl:Nothing back to the rules deriving it
+		ConsistencyChecker consistencyChecker = null;
+		if (checkConsistency) {
+			Predicate nothingPredicate = null;
+			for (Predicate predicate : predicates)
+				if (predicate.getName().equals(SpecialPreds.owlNothingPredName))
+					nothingPredicate = predicate;
+			consistencyChecker = new ConsistencyChecker(nothingPredicate, provenance);
+			List<Rule> clashRules = consistencyChecker.rewrite(rules);
+			rules.clear();
+			rules.addAll(clashRules);
+		}
+
+		// Materialising the partitions of the ABox in worker processes
+		if (workers > 1) {
+			PartitionAnalyser partitionAnalyser = new PartitionAnalyser();
+			if (partitionAnalyser.isSafe(rules)) {
+				startPhase("Materialising Partitions");
+				PartitionSummary summary = new PartitionWorkers(owlOntologyFile, workerOptions, workers)
+						.run(new File(dataFilePath), PartitionAnalyser.headConstants(rules), exportDirectory);
+				if (summary != null) {
+					instrumentation.record("workers", workers);
+					instrumentation.end();
+					System.out.println(" > Finished: " + nanotoSeconds(System.nanoTime() - start));
+
+					instrumentation.start("Counting Facts");
+					visiualiseFactCounts(summary.getCounts());
+					if (reportFile != null)
+						instrumentation.writeJson(reportFile);
+					return;
+				}
+			} else
+				System.out.println("WARNING!!! The ABox cannot be partitioned, as the rule "
+						+ partitionAnalyser.getUnsafeRule() + " joins different individuals; using a single process.");
+		}
+
+		// Loading previous materialisation, if it was saved with the same rules before loading and optimisation
+		MaterialisationState state = stateDirectory == null ? null
+				: new MaterialisationState(stateDirectory, collectRules ? rules : kb.getRules());
+		boolean incremental = state != null && state.exists();
+		List<DataSourceDeclaration> dataSources = new ArrayList<DataSourceDeclaration>();
+		if (incremental) {
+			startPhase("Loading Previous Materialisation");
+			dataSources.addAll(state.dataSources());
+			if (partitionDirectory != null || storeFile != null) {
+				System.out.println(
+						"WARNING!!! Added assertions are loaded through the triple relation in incremental mode.");
+				partitionDirectory = null;
+				storeFile = null;
+			}
+		}
 
 		// Loading ABox
-		System.out.println(" > Loading ABox: " + nanotoSeconds(System.nanoTime() - start));
+		startPhase("Loading ABox");
 		File dataFile = new File(dataFilePath);
-		DataSource dataSource = new RdfFileDataSource(dataFile);
-		DataSourceDeclarationImpl ds = new DataSourceDeclarationImpl(
-				Expressions.makePredicate(SpecialPreds.triplePredName, 3), dataSource);
-		kb.addStatement(ds);
+		if (storeFile != null) {
+			// The store is built on the first run and memory-mapped by later ones
+			if (partitionDirectory == null)
+				partitionDirectory = new File(storeFile.getPath() + ".partitions");
+			int threads = Runtime.getRuntime().availableProcessors();
+			try (TripleStore store = TripleStore.open(dataFile, storeFile, threads)) {
+				instrumentation.record("storedTriples", store.getTripleCount());
+				instrumentation.record("storedTerms", store.getTermCount());
+				dataSources.addAll(new PartitionedTripleLoader(predicates, partitionDirectory).partition(store));
+			}
+		} else if (partitionDirectory != null)
+			dataSources.addAll(new PartitionedTripleLoader(predicates, partitionDirectory).partition(dataFile));
+		else {
+			OWLToRulesConverter.loadingRules(predicates).forEach(ruleConsumer);
+			DataSource dataSource = new RdfFileDataSource(dataFile);
+			DataSourceDeclarationImpl ds = new DataSourceDeclarationImpl(
+					Expressions.makePredicate(SpecialPreds.triplePredName, 3), dataSource);
+			dataSources.add(ds);
+
+			// Only the added assertions are in the triple relation of an incremental run
+			if (!incremental)
+				predicates.add(SpecialPreds.triplePred);
+		}
+		kb.addStatements(dataSources);
+		instrumentation.record("dataSources", kb.getDataSourceDeclarations().size());
+
+		// Optimising rules
+		if (optimise) {
+			startPhase("Optimising Rules");
+			Set<Predicate> dataPredicates = new HashSet<Predicate>();
+			for (DataSourceDeclaration dataSource : dataSources)
+				dataPredicates.add(dataSource.getPredicate());
+			RuleSetOptimiser optimiser = new RuleSetOptimiser();
+			Set<Rule> optimisedRules = optimiser.optimise(rules, dataPredicates);
+			kb.addStatements(optimisedRules);
+			optimiser.printReport();
+			instrumentation.record("removedRules", optimiser.getRemovedRuleCount());
+			instrumentation.record("optimisedRules", optimisedRules.size());
+		} else if (collectRules)
+			kb.addStatements(rules);
 
 		// Materialisation
-		System.out.println(" > Materialisation: " + nanotoSeconds(System.nanoTime() - start));
-		reasoner = new VLogReasoner(kb);
-		reasoner.reason();
+		startPhase("Materialisation");
+		if (profileStages > 0) {
+			ReasoningProfiler profiler = new ReasoningProfiler(kb, engine, provenance, profileStages);
+			backend = profiler.profile();
+			profiler.printReport();
+			instrumentation.record("stageNanos", profiler.getStageNanos());
+			instrumentation.record("predicateHotspotNanos", profiler.getPredicateHotspots());
+			instrumentation.record("axiomHotspotNanos", profiler.getAxiomHotspots());
+		} else {
+			backend = ReasoningBackend.create(engine, kb);
+			if (consistencyChecker != null)
+				backend.stopWhenDerived(consistencyChecker.getClashPredicates());
+			backend.reason();
+		}
+
+		// Checking consistency
+		if (consistencyChecker != null) {
+			startPhase("Checking Consistency");
+			consistencyChecker.check(backend);
+			consistencyChecker.printReport();
+			instrumentation.record("clashes", consistencyChecker.getClashCounts());
+		}
+
+		// Saving materialisation
+		if (state != null) {
+			startPhase("Saving Materialisation");
+			state.save(backend, predicates);
+		}
+
+		// Exporting materialisation, without the facts shared by the partitions of a worker
+		Set<String> sharedTerms = workerOutputFile == null ? null : PartitionAnalyser.headConstants(kb.getRules());
+		if (exportDirectory != null) {
+			startPhase("Exporting Materialisation");
+			FactExporter exporter = new FactExporter(backend, exportFormat);
+			if (sharedTerms != null)
+				exporter.excludeSharedFacts(sharedTerms);
+			exporter.export(predicates, exportDirectory);
+		}
 
 		// Finished
+		instrumentation.end();
 		System.out.println(" > Finished: " + nanotoSeconds(System.nanoTime() - start));
 
-		// Checking Results
-		visiualiseFactCounts(owlToRulesTransformer.getPredicates(), reasoner);
+		// Checking Results. The triple relation holds the ABox as loaded, of which an incremental run only has the
+		// additions, so it is not counted in any mode and the totals of incremental and full runs agree.
+		instrumentation.start("Counting Facts");
+		Set<Predicate> countedPredicates = new LinkedHashSet<Predicate>(predicates);
+		countedPredicates.remove(SpecialPreds.triplePred);
+		if (workerOutputFile != null) {
+			PartitionSummary summary = PartitionSummary.collect(backend, countedPredicates, sharedTerms);
+			summary.write(workerOutputFile);
+			visiualiseFactCounts(summary.getCounts());
+		} else
+			visiualiseFactCounts(new FactCounter(backend).count(countedPredicates));
+
+		if (reportFile != null)
+			instrumentation.writeJson(reportFile);
 	}
 
-	private static void visiualiseFactCounts(Set<Predicate> predicates, Reasoner reasoner) {
-		for (Predicate predicate : predicates) {
+	private static void startPhase(String phase) {
+		System.out.println(" > " + phase + ": " + nanotoSeconds(System.nanoTime() - start));
+		instrumentation.start(phase);
+	}
+
+	private static void visiualiseFactCounts(Map<Predicate, Long> counts) {
+		long totalCount = 0;
+		for (long count : counts.values())
+			totalCount += count;
+		instrumentation.record("facts", totalCount);
+		for (Map.Entry<Predicate, Long> count : counts.entrySet()) {
+			Predicate predicate = count.getKey();
 			System.out.println(predicate);
-			List<Term> variables = new ArrayList<Term>();
-			for (int i = 0; i < predicate.getArity(); i++)
-				variables.add(Expressions.makeUniversalVariable("VX" + Integer.toString(i)));
-			QueryResultIterator iterator = reasoner.answerQuery(Expressions.makePositiveLiteral(predicate, variables),
-					true);
-			int predicateCount = 0;
-			while (iterator.hasNext()) {
-				++predicateCount;
-				iterator.next();
-			}
-			System.out.println(" - " + predicate.getName() + " (" + predicate.getArity() + "): " + predicateCount);
+			System.out.println(" - " + predicate.getName() + " (" + predicate.getArity() + "): " + count.getValue());
 		}
 	}
 
 	private static String nanotoSeconds(long nanoseconds) {
-		return Float.toString(nanoseconds / 1000000000);
+		return Float.toString(nanoseconds / 1000000000f);
 	}
 }
\ No newline at end of file
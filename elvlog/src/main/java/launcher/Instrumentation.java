@@ -0,0 +1,142 @@
+package launcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Wall time, CPU time, allocated bytes, peak heap and counters for each phase of a launcher run.
+// CPU time is the process CPU time when the JVM exposes it; allocations are those of the threads
+// alive at the end of the phase, so short-lived worker pools are only partially accounted for.
+public class Instrumentation {
+
+	private List<Phase> phases = new ArrayList<Phase>();
+	private Phase currentPhase;
+
+	public void start(String name) {
+		end();
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+			if (memoryPool.getType() == MemoryType.HEAP)
+				memoryPool.resetPeakUsage();
+
+		currentPhase = new Phase(name);
+		currentPhase.startWallNanos = System.nanoTime();
+		currentPhase.startCpuNanos = processCpuNanos();
+		currentPhase.startAllocatedBytes = allocatedBytes();
+	}
+
+	public void end() {
+		if (currentPhase == null)
+			return;
+
+		currentPhase.wallNanos = System.nanoTime() - currentPhase.startWallNanos;
+		currentPhase.cpuNanos = processCpuNanos() - currentPhase.startCpuNanos;
+		currentPhase.allocatedBytes = Math.max(0, allocatedBytes() - currentPhase.startAllocatedBytes);
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+			if (memoryPool.getType() == MemoryType.HEAP && memoryPool.getPeakUsage() != null)
+				currentPhase.peakHeapBytes += memoryPool.getPeakUsage().getUsed();
+
+		phases.add(currentPhase);
+		currentPhase = null;
+	}
+
+	// Counters are attached to the current phase
+	public void record(String name, long value) {
+		if (currentPhase != null)
+			currentPhase.counters.put(name, value);
+	}
+
+	public void record(String name, Map<String, ? extends Number> values) {
+		if (currentPhase != null)
+			currentPhase.groupedCounters.put(name, new LinkedHashMap<String, Number>(values));
+	}
+
+	public void writeJson(File reportFile) throws IOException {
+		end();
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8)) {
+			writer.write("{\n  \"phases\": [");
+			for (int i = 0; i < phases.size(); i++) {
+				Phase phase = phases.get(i);
+				writer.write(i == 0 ? "\n" : ",\n");
+				writer.write("    {\n");
+				writer.write("      \"name\": " + jsonString(phase.name) + ",\n");
+				writer.write("      \"wallNanos\": " + phase.wallNanos + ",\n");
+				writer.write("      \"cpuNanos\": " + phase.cpuNanos + ",\n");
+				writer.write("      \"allocatedBytes\": " + phase.allocatedBytes + ",\n");
+				writer.write("      \"peakHeapBytes\": " + phase.peakHeapBytes);
+				for (Map.Entry<String, Long> counter : phase.counters.entrySet())
+					writer.write(",\n      " + jsonString(counter.getKey()) + ": " + counter.getValue());
+				for (Map.Entry<String, Map<String, Number>> group : phase.groupedCounters.entrySet()) {
+					writer.write(",\n      " + jsonString(group.getKey()) + ": {");
+					boolean first = true;
+					for (Map.Entry<String, Number> counter : group.getValue().entrySet()) {
+						writer.write((first ? "" : ", ") + jsonString(counter.getKey()) + ": " + counter.getValue());
+						first = false;
+					}
+					writer.write("}");
+				}
+				writer.write("\n    }");
+			}
+			writer.write("\n  ]\n}\n");
+		}
+	}
+
+	private static long processCpuNanos() {
+		java.lang.management.OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+		if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+		return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return 0;
+		long allocatedBytes = 0;
+		for (long threadAllocatedBytes : ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			if (threadAllocatedBytes > 0)
+				allocatedBytes += threadAllocatedBytes;
+		return allocatedBytes;
+	}
+
+	static String jsonString(String string) {
+		StringBuilder json = new StringBuilder("\"");
+		for (char character : string.toCharArray())
+			if (character == '"' || character == '\\')
+				json.append('\\').append(character);
+			else if (character < 0x20)
+				json.append(String.format("\\u%04x", (int) character));
+			else
+				json.append(character);
+		return json.append('"').toString();
+	}
+
+	private static class Phase {
+		private String name;
+		private long startWallNanos;
+		private long startCpuNanos;
+		private long startAllocatedBytes;
+		private long wallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+		private long peakHeapBytes;
+		private Map<String, Long> counters = new LinkedHashMap<String, Long>();
+		private Map<String, Map<String, Number>> groupedCounters = new LinkedHashMap<String, Map<String, Number>>();
+
+		Phase(String name) {
+			this.name = name;
+		}
+	}
+
+}
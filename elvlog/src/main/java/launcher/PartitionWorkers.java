@@ -0,0 +1,103 @@
+package launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import abox.ABoxPartitioner;
+import materialisation.FactExporter;
+import materialisation.PartitionSummary;
+
+// Materialises the partitions of an ABox in parallel worker processes. Every worker runs ELVLogLauncher with
+// the options and JVM arguments of this process on the ontology and one partition, and writes a summary of its
+// facts; the summaries, and the N-Triples exports if any, are merged once all workers have finished. The
+// working directory is kept when a worker fails, with the output of every worker.
+public class PartitionWorkers {
+
+	private File ontologyFile;
+	private List<String> workerOptions;
+	private int workers;
+
+	public PartitionWorkers(File ontologyFile, List<String> workerOptions, int workers) {
+		this.ontologyFile = ontologyFile;
+		this.workerOptions = workerOptions;
+		this.workers = workers;
+	}
+
+	// Returns null if the ABox cannot be split
+	public PartitionSummary run(File dataFile, Set<String> sharedTerms, File exportDirectory) throws IOException {
+		File workDirectory = Files.createTempDirectory("elvlog-workers").toFile();
+		ABoxPartitioner partitioner = new ABoxPartitioner(sharedTerms);
+		List<File> partitionFiles = partitioner.split(dataFile, workers, workDirectory);
+		if (partitionFiles == null) {
+			System.out.println("WARNING!!! The ABox mentions " + partitioner.getSharedTermInData()
+					+ ", a constant of the rules; using a single partition.");
+			delete(workDirectory);
+			return null;
+		}
+
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		List<Process> processes = new ArrayList<Process>();
+		List<File> summaryFiles = new ArrayList<File>();
+		List<File> exportDirectories = new ArrayList<File>();
+		try {
+			for (int worker = 0; worker < workers; worker++) {
+				File summaryFile = new File(workDirectory, "summary" + worker + ".tsv");
+				File workerExportDirectory = new File(workDirectory, "export" + worker);
+				List<String> command = new ArrayList<String>();
+				command.add(java);
+				command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add(ELVLogLauncher.class.getName());
+				command.add(ontologyFile.getPath());
+				command.add(partitionFiles.get(worker).getPath());
+				command.addAll(workerOptions);
+				command.add("--worker-output");
+				command.add(summaryFile.getPath());
+				if (exportDirectory != null) {
+					command.add("--export");
+					command.add(workerExportDirectory.getPath());
+				}
+
+				processes.add(new ProcessBuilder(command).redirectErrorStream(true)
+						.redirectOutput(new File(workDirectory, "worker" + worker + ".log")).start());
+				summaryFiles.add(summaryFile);
+				exportDirectories.add(workerExportDirectory);
+			}
+
+			for (int worker = 0; worker < workers; worker++)
+				if (processes.get(worker).waitFor() != 0)
+					throw new IOException("Worker " + worker + " failed, see " + workDirectory);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			for (Process process : processes)
+				process.destroy();
+		}
+
+		List<PartitionSummary> summaries = new ArrayList<PartitionSummary>();
+		for (File summaryFile : summaryFiles)
+			summaries.add(PartitionSummary.read(summaryFile));
+		PartitionSummary summary = PartitionSummary.merge(summaries);
+		if (exportDirectory != null)
+			FactExporter.merge(exportDirectories, summary.getSharedFacts(), exportDirectory);
+
+		delete(workDirectory);
+		return summary;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null)
+			for (File child : files)
+				delete(child);
+		file.delete();
+	}
+
+}
@@ -0,0 +1,144 @@
+package materialisation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+import backend.ReasoningBackend;
+import reasoner.RuleProvenance;
+import reasoner.SpecialPreds;
+import reasoner.TermDictionary;
+
+// Checks whether owl:Nothing has instances. Every rule deriving owl:Nothing derives a clash predicate of its
+// own instead, from which owl:Nothing follows, so that each instance of owl:Nothing can be traced back to the
+// rule, and through the provenance to the axiom, that derived it. Backends that can stop early do so once the
+// first clash is derived.
+public class ConsistencyChecker {
+
+	private static int exampleCount = 5;
+
+	private Predicate nothingPredicate;
+	private RuleProvenance provenance;
+	private Map<Predicate, Rule> rulesByClashPredicate = new LinkedHashMap<Predicate, Rule>();
+	private Map<Predicate, Long> clashCounts = new LinkedHashMap<Predicate, Long>();
+	private Map<Predicate, List<String>> clashExamples = new LinkedHashMap<Predicate, List<String>>();
+
+	// Without provenance (for instance with cached rules) clashes are only traced back to rules
+	public ConsistencyChecker(Predicate nothingPredicate, RuleProvenance provenance) {
+		this.nothingPredicate = nothingPredicate;
+		this.provenance = provenance;
+	}
+
+	public List<Rule> rewrite(Collection<Rule> rules) {
+		List<Rule> rewrittenRules = new ArrayList<Rule>();
+		for (Rule rule : rules) {
+			Predicate clashPredicate = null;
+			List<PositiveLiteral> head = new ArrayList<PositiveLiteral>();
+			for (PositiveLiteral headAtom : rule.getHead().getLiterals())
+				if (headAtom.getPredicate().equals(nothingPredicate)) {
+					if (clashPredicate == null)
+						clashPredicate = clashPredicate(rule, rewrittenRules);
+					head.add(Expressions.makePositiveLiteral(clashPredicate, headAtom.getTerms()));
+				} else
+					head.add(headAtom);
+
+			if (clashPredicate == null)
+				rewrittenRules.add(rule);
+			else
+				rewrittenRules.add(Expressions.makeRule(Expressions.makePositiveConjunction(head), rule.getBody()));
+		}
+		return rewrittenRules;
+	}
+
+	public Set<Predicate> getClashPredicates() {
+		return rulesByClashPredicate.keySet();
+	}
+
+	// Counts the clashes of each rule and keeps some of the individuals involved
+	public boolean check(ReasoningBackend backend) throws IOException {
+		clashCounts.putAll(new FactCounter(backend).count(getClashPredicates()));
+		File clashesFile = File.createTempFile("elvlog-clashes", ".csv");
+		try {
+			for (Map.Entry<Predicate, Long> clashCount : clashCounts.entrySet())
+				if (clashCount.getValue() > 0) {
+					backend.exportFacts(clashCount.getKey(), clashesFile);
+					clashExamples.put(clashCount.getKey(), firstLines(clashesFile, exampleCount));
+				}
+		} finally {
+			clashesFile.delete();
+		}
+		return clashExamples.isEmpty();
+	}
+
+	// Clashes by the axioms, or rules without provenance, they come from
+	public Map<String, Long> getClashCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (Predicate clashPredicate : clashExamples.keySet())
+			for (String source : sources(clashPredicate))
+				counts.merge(source, clashCounts.get(clashPredicate), Long::sum);
+		return counts;
+	}
+
+	public void printReport() {
+		System.out.println(" - Consistent: " + clashExamples.isEmpty());
+		for (Map.Entry<Predicate, List<String>> examples : clashExamples.entrySet()) {
+			Predicate clashPredicate = examples.getKey();
+			System.out.println(" - Instances of owl:Nothing: " + clashCounts.get(clashPredicate));
+			System.out.println("   Rule: " + rulesByClashPredicate.get(clashPredicate));
+			if (provenance != null)
+				for (String source : provenance.getSources(rulesByClashPredicate.get(clashPredicate)))
+					System.out.println("   Axiom: " + source);
+			System.out.println("   Individuals: " + String.join(" ", examples.getValue()));
+		}
+	}
+
+	// The first clash predicate of a rule also gets the rule deriving owl:Nothing from it
+	private Predicate clashPredicate(Rule rule, List<Rule> rewrittenRules) {
+		Predicate clashPredicate = Expressions.makePredicate(
+				SpecialPreds.clashPredPref + (rulesByClashPredicate.size() + 1) + ">", nothingPredicate.getArity());
+		rulesByClashPredicate.put(clashPredicate, rule);
+
+		List<Term> variables = new ArrayList<Term>();
+		for (int i = 1; i <= nothingPredicate.getArity(); i++)
+			variables.add(TermDictionary.variable(i));
+		rewrittenRules.add(Expressions.makeRule(Expressions.makePositiveLiteral(nothingPredicate, variables),
+				Expressions.makePositiveLiteral(clashPredicate, variables)));
+		return clashPredicate;
+	}
+
+	private List<String> sources(Predicate clashPredicate) {
+		List<String> sources = new ArrayList<String>();
+		if (provenance != null)
+			sources.addAll(provenance.getSources(rulesByClashPredicate.get(clashPredicate)));
+		if (sources.isEmpty())
+			sources.add(rulesByClashPredicate.get(clashPredicate).toString());
+		return sources;
+	}
+
+	private static List<String> firstLines(File file, int count) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while (lines.size() < count && (line = reader.readLine()) != null)
+				lines.add(line);
+		}
+		return lines;
+	}
+
+}
@@ -0,0 +1,85 @@
+package materialisation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+
+import backend.ReasoningBackend;
+import backend.VLogBackend;
+
+// Counts the facts of each predicate. Backends holding the facts in memory count them directly. vlog4j 0.5 has
+// no way to count query answers, so with VLog each predicate is exported natively to a temporary CSV file and
+// its lines are counted, which takes time and disk space linear in the facts. Exports hold the lock of the
+// reasoner and run one at a time; the pool only lets the lines of exported files be counted while the next
+// predicate is exported.
+public class FactCounter {
+
+	private ReasoningBackend backend;
+	private int threads;
+
+	public FactCounter(ReasoningBackend backend) {
+		this(backend, Runtime.getRuntime().availableProcessors());
+	}
+
+	public FactCounter(ReasoningBackend backend, int threads) {
+		this.backend = backend;
+		this.threads = threads;
+	}
+
+	public Map<Predicate, Long> count(Set<Predicate> predicates) throws IOException {
+		if (!(backend instanceof VLogBackend)) {
+			Map<Predicate, Long> counts = new LinkedHashMap<Predicate, Long>();
+			for (Predicate predicate : predicates)
+				counts.put(predicate, backend.countFacts(predicate));
+			return counts;
+		}
+
+		VLogBackend vlog = (VLogBackend) backend;
+		File countDirectory = Files.createTempDirectory("elvlog-counts").toFile();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Map<Predicate, Future<Long>> futures = new LinkedHashMap<Predicate, Future<Long>>();
+			int predicateIndex = 0;
+			for (Predicate predicate : predicates) {
+				File answersFile = new File(countDirectory, "p" + predicateIndex++ + ".csv");
+				futures.put(predicate, executor.submit(() -> count(vlog, predicate, answersFile)));
+			}
+
+			Map<Predicate, Long> counts = new LinkedHashMap<Predicate, Long>();
+			for (Map.Entry<Predicate, Future<Long>> future : futures.entrySet())
+				counts.put(future.getKey(), future.getValue().get());
+			return counts;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			countDirectory.delete();
+		}
+	}
+
+	private static long count(VLogBackend vlog, Predicate predicate, File answersFile) {
+		try {
+			return vlog.countFacts(predicate, answersFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			answersFile.delete();
+		}
+	}
+
+}
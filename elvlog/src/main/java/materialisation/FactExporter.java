@@ -0,0 +1,305 @@
+package materialisation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+import backend.ReasoningBackend;
+import reasoner.SpecialPreds;
+
+// Writes the materialisation to a directory, one output per predicate and one worker per predicate.
+// The backend exports the facts of each predicate to a temporary CSV file (VLog natively, serialised on
+// the reasoner), which the worker then converts into gzipped N-Triples or into dictionary encoded columns.
+public class FactExporter {
+
+	public enum Format {
+		NTRIPLES, COLUMNAR
+	}
+
+	private static int bufferSize = 1 << 20;
+
+	private ReasoningBackend backend;
+	private Format format;
+	private int threads;
+	private Set<String> sharedTerms = new HashSet<String>();
+
+	// Dictionary shared by all workers of a columnar export
+	private Map<String, Integer> dictionary = new ConcurrentHashMap<String, Integer>();
+
+	public FactExporter(ReasoningBackend backend, Format format) {
+		this(backend, format, Runtime.getRuntime().availableProcessors());
+	}
+
+	public FactExporter(ReasoningBackend backend, Format format, int threads) {
+		this.backend = backend;
+		this.format = format;
+		this.threads = threads;
+	}
+
+	// Facts made only of these terms are left out; the exports of partitions of the ABox get them once merged
+	public void excludeSharedFacts(Set<String> sharedTerms) {
+		this.sharedTerms = sharedTerms;
+	}
+
+	public void export(Set<Predicate> predicates, File outputDirectory) throws IOException {
+		outputDirectory.mkdirs();
+		dictionary.clear();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			int predicateIndex = 0;
+			for (Predicate predicate : predicates) {
+				if (SpecialPreds.isInternalPredicate(predicate)
+						|| (predicate.getArity() != 1 && predicate.getArity() != 2))
+					continue;
+				String fileName = "p" + predicateIndex++;
+				futures.add(executor.submit(() -> export(predicate, outputDirectory, fileName)));
+			}
+
+			// Index of the written files: arity, file name, number of facts and predicate name
+			try (Writer index = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(new File(outputDirectory, "export.index")), StandardCharsets.UTF_8))) {
+				for (Future<String> future : futures)
+					index.write(future.get());
+			}
+
+			if (format == Format.COLUMNAR)
+				writeDictionary(new File(outputDirectory, "dictionary.bin"));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private String export(Predicate predicate, File outputDirectory, String fileName) {
+		File answersFile = new File(outputDirectory, fileName + ".tmp.csv");
+		try {
+			backend.exportFacts(predicate, answersFile);
+
+			long facts;
+			if (format == Format.NTRIPLES)
+				facts = writeNTriples(predicate, answersFile, new File(outputDirectory, fileName + ".nt.gz"),
+						sharedTerms);
+			else
+				facts = writeColumns(predicate, answersFile, outputDirectory, fileName);
+			return predicate.getArity() + "\t" + fileName + "\t" + facts + "\t" + predicate.getName() + "\n";
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			answersFile.delete();
+		}
+	}
+
+	// Concatenates the N-Triples exports of the partitions of an ABox predicate by predicate, as gzip members
+	// can be concatenated, and adds the shared facts of the partitions once
+	public static void merge(List<File> partitionDirectories, Map<Predicate, Set<String>> sharedFacts,
+			File outputDirectory) throws IOException {
+		Map<Predicate, List<File>> filesByPredicate = new LinkedHashMap<Predicate, List<File>>();
+		Map<Predicate, Long> factsByPredicate = new LinkedHashMap<Predicate, Long>();
+		for (File partitionDirectory : partitionDirectories)
+			try (BufferedReader reader = openAnswers(new File(partitionDirectory, "export.index"))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					// arity, file name, number of facts, predicate name
+					String[] fields = line.split("\t", 4);
+					Predicate predicate = Expressions.makePredicate(fields[3], Integer.parseInt(fields[0]));
+					filesByPredicate.computeIfAbsent(predicate, p -> new ArrayList<File>())
+							.add(new File(partitionDirectory, fields[1] + ".nt.gz"));
+					factsByPredicate.merge(predicate, Long.parseLong(fields[2]), Long::sum);
+				}
+			}
+
+		outputDirectory.mkdirs();
+		try (Writer index = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(outputDirectory, "export.index")), StandardCharsets.UTF_8))) {
+			int predicateIndex = 0;
+			for (Map.Entry<Predicate, List<File>> files : filesByPredicate.entrySet()) {
+				Predicate predicate = files.getKey();
+				String fileName = "p" + predicateIndex++;
+				long facts = factsByPredicate.get(predicate);
+				try (OutputStream output = new FileOutputStream(new File(outputDirectory, fileName + ".nt.gz"))) {
+					for (File file : files.getValue())
+						Files.copy(file.toPath(), output);
+
+					if (sharedFacts.containsKey(predicate)) {
+						File answersFile = new File(outputDirectory, fileName + ".tmp.csv");
+						File sharedFile = new File(outputDirectory, fileName + ".tmp.nt.gz");
+						try {
+							Files.write(answersFile.toPath(), sharedFacts.get(predicate), StandardCharsets.UTF_8);
+							facts += writeNTriples(predicate, answersFile, sharedFile, new HashSet<String>());
+							Files.copy(sharedFile.toPath(), output);
+						} finally {
+							answersFile.delete();
+							sharedFile.delete();
+						}
+					}
+				}
+				index.write(predicate.getArity() + "\t" + fileName + "\t" + facts + "\t" + predicate.getName() + "\n");
+			}
+		}
+	}
+
+	private static long writeNTriples(Predicate predicate, File answersFile, File outputFile,
+			Set<String> excludedTerms) throws IOException {
+		long facts = 0;
+		try (BufferedReader reader = openAnswers(answersFile);
+				Writer writer = new BufferedWriter(new OutputStreamWriter(
+						new GZIPOutputStream(new FileOutputStream(outputFile), bufferSize), StandardCharsets.UTF_8),
+						bufferSize)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				List<String> terms = parseCsvLine(line);
+				if (terms.size() != predicate.getArity() || isShared(terms, excludedTerms))
+					continue;
+
+				writer.write(toNTriplesTerm(terms.get(0)));
+				if (predicate.getArity() == 1) {
+					// C(a) as a rdf:type C
+					writer.write(' ');
+					writer.write(SpecialPreds.rdfTypePredName);
+					writer.write(' ');
+					writer.write(predicate.getName());
+				} else {
+					// R(a, b) as a R b
+					writer.write(' ');
+					writer.write(predicate.getName());
+					writer.write(' ');
+					writer.write(toNTriplesTerm(terms.get(1)));
+				}
+				writer.write(" .\n");
+				facts++;
+			}
+		}
+		return facts;
+	}
+
+	// One file of integer identifiers per column
+	private long writeColumns(Predicate predicate, File answersFile, File outputDirectory, String fileName)
+			throws IOException {
+		long facts = 0;
+		List<DataOutputStream> columns = new ArrayList<DataOutputStream>();
+		try (BufferedReader reader = openAnswers(answersFile)) {
+			for (int i = 0; i < predicate.getArity(); i++)
+				columns.add(new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(new File(outputDirectory, fileName + ".c" + i)), bufferSize)));
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				List<String> terms = parseCsvLine(line);
+				if (terms.size() != predicate.getArity() || isShared(terms, sharedTerms))
+					continue;
+				for (int i = 0; i < terms.size(); i++)
+					columns.get(i).writeInt(encode(toNTriplesTerm(terms.get(i))));
+				facts++;
+			}
+		} finally {
+			for (DataOutputStream column : columns)
+				column.close();
+		}
+		return facts;
+	}
+
+	private int encode(String term) {
+		Integer id = dictionary.get(term);
+		if (id != null)
+			return id;
+		synchronized (dictionary) {
+			return dictionary.computeIfAbsent(term, t -> dictionary.size());
+		}
+	}
+
+	// Number of terms followed by the terms ordered by identifier
+	private void writeDictionary(File dictionaryFile) throws IOException {
+		String[] terms = new String[dictionary.size()];
+		for (Map.Entry<String, Integer> entry : dictionary.entrySet())
+			terms[entry.getValue()] = entry.getKey();
+
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(dictionaryFile), bufferSize))) {
+			output.writeInt(terms.length);
+			for (String term : terms)
+				output.writeUTF(term);
+		}
+	}
+
+	private static BufferedReader openAnswers(File answersFile) throws IOException {
+		return new BufferedReader(
+				new InputStreamReader(new FileInputStream(answersFile), StandardCharsets.UTF_8), bufferSize);
+	}
+
+	// Fresh constants stand for anonymous individuals and have no IRI, so they become blank nodes
+	static String toNTriplesTerm(String term) {
+		if (term.startsWith("<") || term.startsWith("\"") || term.startsWith("_:"))
+			return term;
+		if (SpecialPreds.isFreshConstantName(term))
+			return "_:" + term;
+		return "<" + term + ">";
+	}
+
+	static boolean isShared(List<String> terms, Set<String> sharedTerms) {
+		for (String term : terms)
+			if (!sharedTerms.contains(term))
+				return false;
+		return true;
+	}
+
+	static List<String> parseCsvLine(String line) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char character = line.charAt(i);
+			if (quoted) {
+				if (character != '"')
+					value.append(character);
+				else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+					value.append(line.charAt(++i));
+				else
+					quoted = false;
+			} else if (character == '"' && value.length() == 0)
+				quoted = true;
+			else if (character == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else
+				value.append(character);
+		}
+		values.add(value.toString());
+		return values;
+	}
+
+}
@@ -0,0 +1,141 @@
+package materialisation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.DataSourceDeclaration;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.implementation.DataSourceDeclarationImpl;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+import org.semanticweb.vlog4j.core.reasoner.implementation.CsvFileDataSource;
+
+import backend.ReasoningBackend;
+import reasoner.SpecialPreds;
+
+// The facts of a previous materialisation, kept as one CSV file per predicate. Since the rules are
+// Datalog rules, reasoning over these facts together with newly added ones yields the same
+// materialisation as reasoning over the whole ABox from scratch, as long as the rules do not change: the
+// index starts with the hash of the rule set, and a state saved with other rules is not used.
+// A new state is written next to the current one, which is moved aside before the new one takes its place;
+// if a run stops in between, the previous state is restored.
+public class MaterialisationState {
+
+	private static String indexFileName = "state.index";
+	private static String currentDirectoryName = "current";
+	private static String nextDirectoryName = "next";
+	private static String previousDirectoryName = "previous";
+
+	private File stateDirectory;
+	private String ruleSetHash;
+
+	public MaterialisationState(File stateDirectory, Collection<Rule> rules) {
+		this.stateDirectory = stateDirectory;
+		this.ruleSetHash = ruleSetHash(rules);
+	}
+
+	public boolean exists() throws IOException {
+		File currentDirectory = new File(stateDirectory, currentDirectoryName);
+		File previousDirectory = new File(stateDirectory, previousDirectoryName);
+		if (!currentDirectory.exists() && previousDirectory.exists() && !previousDirectory.renameTo(currentDirectory))
+			throw new IOException("Could not restore the materialisation state in " + stateDirectory);
+
+		File indexFile = new File(currentDirectory, indexFileName);
+		if (!indexFile.isFile())
+			return false;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+			if (ruleSetHash.equals(reader.readLine()))
+				return true;
+		}
+		System.out.println("WARNING!!! The materialisation state in " + stateDirectory
+				+ " was saved with other rules and is ignored; only the given ABox is materialised.");
+		return false;
+	}
+
+	public List<DataSourceDeclaration> dataSources() throws IOException {
+		File currentDirectory = new File(stateDirectory, currentDirectoryName);
+		List<DataSourceDeclaration> declarations = new ArrayList<DataSourceDeclaration>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(new File(currentDirectory, indexFileName)), StandardCharsets.UTF_8))) {
+			reader.readLine();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// arity, file name, predicate name
+				String[] fields = line.split("\t", 3);
+				Predicate predicate = Expressions.makePredicate(fields[2], Integer.parseInt(fields[0]));
+				declarations.add(new DataSourceDeclarationImpl(predicate,
+						new CsvFileDataSource(new File(currentDirectory, fields[1]))));
+			}
+		}
+		return declarations;
+	}
+
+	// Exports every predicate but the triple relation, then replaces the previous state
+	public void save(ReasoningBackend backend, Set<Predicate> predicates) throws IOException {
+		File nextDirectory = new File(stateDirectory, nextDirectoryName);
+		deleteDirectory(nextDirectory);
+		nextDirectory.mkdirs();
+
+		try (BufferedWriter index = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(nextDirectory, indexFileName)), StandardCharsets.UTF_8))) {
+			index.write(ruleSetHash + "\n");
+			int predicateIndex = 0;
+			for (Predicate predicate : predicates) {
+				if (predicate.getName().equals(SpecialPreds.triplePredName))
+					continue;
+
+				String fileName = "p" + predicateIndex++ + ".csv";
+				backend.exportFacts(predicate, new File(nextDirectory, fileName));
+				index.write(predicate.getArity() + "\t" + fileName + "\t" + predicate.getName() + "\n");
+			}
+		}
+
+		File currentDirectory = new File(stateDirectory, currentDirectoryName);
+		File previousDirectory = new File(stateDirectory, previousDirectoryName);
+		deleteDirectory(previousDirectory);
+		if (currentDirectory.exists() && !currentDirectory.renameTo(previousDirectory)
+				|| !nextDirectory.renameTo(currentDirectory))
+			throw new IOException("Could not replace the materialisation state in " + stateDirectory);
+		deleteDirectory(previousDirectory);
+	}
+
+	// SHA-256 of the rules in the order they are given, which the conversion keeps deterministic
+	private static String ruleSetHash(Collection<Rule> rules) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (Rule rule : rules)
+			digest.update((rule + "\n").getBytes(StandardCharsets.UTF_8));
+
+		StringBuilder hash = new StringBuilder();
+		for (byte hashByte : digest.digest())
+			hash.append(String.format("%02x", hashByte));
+		return hash.toString();
+	}
+
+	private static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		directory.delete();
+	}
+
+}
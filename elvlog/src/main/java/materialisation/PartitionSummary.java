@@ -0,0 +1,123 @@
+package materialisation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+import backend.ReasoningBackend;
+
+// Result of the materialisation of a partition of the ABox: the number of facts of each predicate and the
+// facts made only of shared terms (the constants of the rule heads), which other partitions may derive as well.
+// Summaries are written by the worker processes as tab separated values (arity, predicate name, and then the
+// count or a shared fact as a CSV line) and merged by counting every shared fact once.
+public class PartitionSummary {
+
+	private static String countTag = "count";
+	private static String sharedTag = "shared";
+
+	private Map<Predicate, Long> counts = new LinkedHashMap<Predicate, Long>();
+	private Map<Predicate, Set<String>> sharedFacts = new LinkedHashMap<Predicate, Set<String>>();
+
+	public static PartitionSummary collect(ReasoningBackend backend, Set<Predicate> predicates, Set<String> sharedTerms)
+			throws IOException {
+		PartitionSummary summary = new PartitionSummary();
+		summary.counts.putAll(new FactCounter(backend).count(predicates));
+		if (sharedTerms.isEmpty())
+			return summary;
+
+		File answersFile = File.createTempFile("elvlog-shared", ".csv");
+		try {
+			for (Map.Entry<Predicate, Long> count : summary.counts.entrySet()) {
+				if (count.getValue() == 0)
+					continue;
+				backend.exportFacts(count.getKey(), answersFile);
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(new FileInputStream(answersFile), StandardCharsets.UTF_8), 1 << 16)) {
+					String line;
+					while ((line = reader.readLine()) != null)
+						if (FactExporter.isShared(FactExporter.parseCsvLine(line), sharedTerms))
+							summary.sharedFacts.computeIfAbsent(count.getKey(), p -> new LinkedHashSet<String>())
+									.add(line);
+				}
+			}
+		} finally {
+			answersFile.delete();
+		}
+		return summary;
+	}
+
+	public static PartitionSummary read(File summaryFile) throws IOException {
+		PartitionSummary summary = new PartitionSummary();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(summaryFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// tag, arity, predicate name, count or shared fact
+				String[] fields = line.split("\t", 4);
+				Predicate predicate = Expressions.makePredicate(fields[2], Integer.parseInt(fields[1]));
+				if (fields[0].equals(countTag))
+					summary.counts.put(predicate, Long.parseLong(fields[3]));
+				else
+					summary.sharedFacts.computeIfAbsent(predicate, p -> new LinkedHashSet<String>()).add(fields[3]);
+			}
+		}
+		return summary;
+	}
+
+	public void write(File summaryFile) throws IOException {
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(summaryFile), StandardCharsets.UTF_8))) {
+			for (Map.Entry<Predicate, Long> count : counts.entrySet())
+				writer.write(countTag + "\t" + count.getKey().getArity() + "\t" + count.getKey().getName() + "\t"
+						+ count.getValue() + "\n");
+			for (Map.Entry<Predicate, Set<String>> facts : sharedFacts.entrySet())
+				for (String fact : facts.getValue())
+					writer.write(sharedTag + "\t" + facts.getKey().getArity() + "\t" + facts.getKey().getName() + "\t"
+							+ fact + "\n");
+		}
+	}
+
+	// Shared facts that are already known are not counted again
+	public void add(PartitionSummary summary) {
+		for (Map.Entry<Predicate, Long> count : summary.counts.entrySet())
+			counts.merge(count.getKey(), count.getValue(), Long::sum);
+		for (Map.Entry<Predicate, Set<String>> facts : summary.sharedFacts.entrySet()) {
+			Set<String> knownFacts = sharedFacts.computeIfAbsent(facts.getKey(), p -> new LinkedHashSet<String>());
+			for (String fact : facts.getValue())
+				if (!knownFacts.add(fact))
+					counts.merge(facts.getKey(), -1L, Long::sum);
+		}
+	}
+
+	public Map<Predicate, Long> getCounts() {
+		return counts;
+	}
+
+	public Map<Predicate, Set<String>> getSharedFacts() {
+		return sharedFacts;
+	}
+
+	// Merged summaries of several partitions
+	public static PartitionSummary merge(List<PartitionSummary> summaries) {
+		PartitionSummary mergedSummary = new PartitionSummary();
+		for (PartitionSummary summary : summaries)
+			mergedSummary.add(summary);
+		return mergedSummary;
+	}
+
+}
@@ -0,0 +1,255 @@
+package materialisation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
+
+import backend.ReasoningBackend;
+import reasoner.RuleProvenance;
+
+// Attributes materialisation time to predicates and axioms by staged reasoning, since VLog does not report
+// time per rule. The strongly connected components of the predicate dependency graph are ordered
+// topologically and cut into stages, and the knowledge base is materialised once with the data alone and
+// then once more for every stage with the rules of all stages up to it. The time a stage adds is shared
+// among the predicates derived in it by their new facts, and the time of each predicate among the axioms of
+// the rules deriving it. The last materialisation is the complete one and is kept.
+public class ReasoningProfiler {
+
+	private static int hotspotCount = 20;
+
+	private KnowledgeBase kb;
+	private ReasoningBackend.Engine engine;
+	private RuleProvenance provenance;
+	private int stageCount;
+
+	private List<Long> stageNanos = new ArrayList<Long>();
+	private List<Integer> stageRules = new ArrayList<Integer>();
+	private Map<Predicate, Long> predicateNanos = new HashMap<Predicate, Long>();
+	private Map<Predicate, Long> predicateFacts = new HashMap<Predicate, Long>();
+	private Map<String, Long> sourceNanos = new HashMap<String, Long>();
+
+	// Without provenance (for instance with cached rules) time is only attributed to predicates
+	public ReasoningProfiler(KnowledgeBase kb, ReasoningBackend.Engine engine, RuleProvenance provenance,
+			int stageCount) {
+		this.kb = kb;
+		this.engine = engine;
+		this.provenance = provenance;
+		this.stageCount = stageCount;
+	}
+
+	public ReasoningBackend profile() throws IOException {
+		List<List<Rule>> stages = stages(kb.getRules());
+
+		List<Rule> rules = new ArrayList<Rule>();
+		long previousNanos = 0;
+		ReasoningBackend backend = null;
+		for (int stage = 0; stage <= stages.size(); stage++) {
+			if (stage > 0)
+				rules.addAll(stages.get(stage - 1));
+			KnowledgeBase stageKb = new KnowledgeBase();
+			stageKb.addStatements(kb.getDataSourceDeclarations());
+			stageKb.addStatements(kb.getFacts());
+			stageKb.addStatements(rules);
+
+			if (backend != null)
+				backend.close();
+			backend = ReasoningBackend.create(engine, stageKb);
+			long start = System.nanoTime();
+			backend.reason();
+			long nanos = System.nanoTime() - start;
+			stageNanos.add(nanos);
+			stageRules.add(rules.size());
+			System.out.println(" - Stage " + stage + " (" + rules.size() + " rules): " + nanos / 1000000000f);
+
+			// The data alone is the baseline of the first stage
+			if (stage > 0)
+				attribute(stages.get(stage - 1), Math.max(0, nanos - previousNanos), backend);
+			previousNanos = nanos;
+		}
+
+		for (Map.Entry<Predicate, Long> nanos : predicateNanos.entrySet()) {
+			Set<String> sources = provenance == null ? new LinkedHashSet<String>()
+					: provenance.getSources(nanos.getKey());
+			for (String source : sources)
+				sourceNanos.merge(source, nanos.getValue() / sources.size(), Long::sum);
+		}
+		return backend;
+	}
+
+	// Hotspots as predicate or axiom names and estimated nanoseconds, most expensive first
+	public Map<String, Long> getPredicateHotspots() {
+		Map<String, Long> nanosByName = new HashMap<String, Long>();
+		for (Map.Entry<Predicate, Long> nanos : predicateNanos.entrySet())
+			nanosByName.put(nanos.getKey().getName(), nanos.getValue());
+		return ranked(nanosByName);
+	}
+
+	public Map<String, Long> getAxiomHotspots() {
+		return ranked(sourceNanos);
+	}
+
+	public Map<String, Long> getStageNanos() {
+		Map<String, Long> nanosByStage = new LinkedHashMap<String, Long>();
+		for (int stage = 0; stage < stageNanos.size(); stage++)
+			nanosByStage.put(stage + " (" + stageRules.get(stage) + " rules)", stageNanos.get(stage));
+		return nanosByStage;
+	}
+
+	public void printReport() {
+		System.out.println(" - Predicate hotspots (estimated seconds, new facts):");
+		for (Map.Entry<String, Long> hotspot : getPredicateHotspots().entrySet()) {
+			long facts = 0;
+			for (Map.Entry<Predicate, Long> predicate : predicateFacts.entrySet())
+				if (predicate.getKey().getName().equals(hotspot.getKey()))
+					facts += predicate.getValue();
+			System.out.println("   " + hotspot.getValue() / 1000000000f + "\t" + facts + "\t" + hotspot.getKey());
+		}
+		if (provenance != null) {
+			System.out.println(" - Axiom hotspots (estimated seconds):");
+			for (Map.Entry<String, Long> hotspot : getAxiomHotspots().entrySet())
+				System.out.println("   " + hotspot.getValue() / 1000000000f + "\t" + hotspot.getKey());
+		}
+	}
+
+	// The time of the stage is shared by the new facts of the predicates its rules derive
+	private void attribute(List<Rule> rules, long nanos, ReasoningBackend backend) throws IOException {
+		Set<Predicate> headPredicates = new LinkedHashSet<Predicate>();
+		for (Rule rule : rules)
+			for (Literal headAtom : rule.getHead().getLiterals())
+				headPredicates.add(headAtom.getPredicate());
+
+		Map<Predicate, Long> newFacts = new LinkedHashMap<Predicate, Long>();
+		long totalNewFacts = 0;
+		for (Map.Entry<Predicate, Long> count : new FactCounter(backend).count(headPredicates).entrySet()) {
+			long facts = Math.max(0, count.getValue() - predicateFacts.getOrDefault(count.getKey(), 0L));
+			newFacts.put(count.getKey(), facts);
+			predicateFacts.put(count.getKey(), count.getValue());
+			totalNewFacts += facts;
+		}
+
+		for (Map.Entry<Predicate, Long> facts : newFacts.entrySet()) {
+			long share = totalNewFacts == 0 ? nanos / newFacts.size() : nanos * facts.getValue() / totalNewFacts;
+			predicateNanos.merge(facts.getKey(), share, Long::sum);
+		}
+	}
+
+	// Rules ordered by the topological position of their last head predicate and cut between components
+	private List<List<Rule>> stages(Collection<Rule> rules) {
+		Map<Predicate, Integer> componentIndexes = componentIndexes(rules);
+		List<List<Rule>> rulesByComponent = new ArrayList<List<Rule>>();
+		int componentCount = componentIndexes.isEmpty() ? 0 : Collections.max(componentIndexes.values()) + 1;
+		for (int i = 0; i < componentCount; i++)
+			rulesByComponent.add(new ArrayList<Rule>());
+		for (Rule rule : rules) {
+			int componentIndex = 0;
+			for (Literal headAtom : rule.getHead().getLiterals())
+				componentIndex = Math.max(componentIndex, componentIndexes.get(headAtom.getPredicate()));
+			rulesByComponent.get(componentIndex).add(rule);
+		}
+
+		List<List<Rule>> stages = new ArrayList<List<Rule>>();
+		int stageSize = Math.max(1, (rules.size() + stageCount - 1) / stageCount);
+		List<Rule> stage = new ArrayList<Rule>();
+		for (List<Rule> componentRules : rulesByComponent) {
+			stage.addAll(componentRules);
+			if (stage.size() >= stageSize) {
+				stages.add(stage);
+				stage = new ArrayList<Rule>();
+			}
+		}
+		if (!stage.isEmpty())
+			stages.add(stage);
+		return stages;
+	}
+
+	// Iterative Tarjan; components are found sinks first, so their indexes are reversed
+	private static Map<Predicate, Integer> componentIndexes(Collection<Rule> rules) {
+		Map<Predicate, Set<Predicate>> successors = new LinkedHashMap<Predicate, Set<Predicate>>();
+		for (Rule rule : rules)
+			for (Literal headAtom : rule.getHead().getLiterals()) {
+				successors.computeIfAbsent(headAtom.getPredicate(), p -> new LinkedHashSet<Predicate>());
+				for (Literal bodyAtom : rule.getBody().getLiterals())
+					successors.computeIfAbsent(bodyAtom.getPredicate(), p -> new LinkedHashSet<Predicate>())
+							.add(headAtom.getPredicate());
+			}
+
+		Map<Predicate, Integer> indexes = new HashMap<Predicate, Integer>();
+		Map<Predicate, Integer> lowLinks = new HashMap<Predicate, Integer>();
+		Set<Predicate> onStack = new LinkedHashSet<Predicate>();
+		List<Predicate> stack = new ArrayList<Predicate>();
+		Map<Predicate, Integer> components = new HashMap<Predicate, Integer>();
+		int componentCount = 0;
+		for (Predicate root : successors.keySet()) {
+			if (indexes.containsKey(root))
+				continue;
+			List<Predicate> callStack = new ArrayList<Predicate>();
+			List<List<Predicate>> pendingSuccessors = new ArrayList<List<Predicate>>();
+			callStack.add(root);
+			pendingSuccessors.add(new ArrayList<Predicate>(successors.get(root)));
+			indexes.put(root, indexes.size());
+			lowLinks.put(root, indexes.get(root));
+			stack.add(root);
+			onStack.add(root);
+
+			while (!callStack.isEmpty()) {
+				Predicate predicate = callStack.get(callStack.size() - 1);
+				List<Predicate> pending = pendingSuccessors.get(pendingSuccessors.size() - 1);
+				if (!pending.isEmpty()) {
+					Predicate successor = pending.remove(pending.size() - 1);
+					if (!indexes.containsKey(successor)) {
+						indexes.put(successor, indexes.size());
+						lowLinks.put(successor, indexes.get(successor));
+						stack.add(successor);
+						onStack.add(successor);
+						callStack.add(successor);
+						pendingSuccessors.add(new ArrayList<Predicate>(successors.get(successor)));
+					} else if (onStack.contains(successor))
+						lowLinks.put(predicate, Math.min(lowLinks.get(predicate), indexes.get(successor)));
+					continue;
+				}
+
+				callStack.remove(callStack.size() - 1);
+				pendingSuccessors.remove(pendingSuccessors.size() - 1);
+				if (!callStack.isEmpty()) {
+					Predicate caller = callStack.get(callStack.size() - 1);
+					lowLinks.put(caller, Math.min(lowLinks.get(caller), lowLinks.get(predicate)));
+				}
+				if (lowLinks.get(predicate).equals(indexes.get(predicate))) {
+					Predicate member;
+					do {
+						member = stack.remove(stack.size() - 1);
+						onStack.remove(member);
+						components.put(member, componentCount);
+					} while (!member.equals(predicate));
+					componentCount++;
+				}
+			}
+		}
+
+		for (Map.Entry<Predicate, Integer> component : components.entrySet())
+			component.setValue(componentCount - 1 - component.getValue());
+		return components;
+	}
+
+	private static Map<String, Long> ranked(Map<String, Long> nanos) {
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(nanos.entrySet());
+		Collections.sort(entries, (first, second) -> Long.compare(second.getValue(), first.getValue()));
+		Map<String, Long> ranked = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(hotspotCount, entries.size())))
+			ranked.put(entry.getKey(), entry.getValue());
+		return ranked;
+	}
+
+}
@@ -0,0 +1,189 @@
+package reasoner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+
+// Told hierarchy of the atomic SubClassOf and EquivalentClasses axioms of an ontology, classified ahead of
+// the conversion so that each instance reaches all its superclasses in a single step. Classes are numbered
+// and edges kept as bitsets; the strongly connected components (sets of equivalent classes) are computed
+// with Kosaraju's algorithm and the superclasses of each component are merged in reverse topological order.
+public class ClassHierarchy {
+
+	private Map<OWLClass, Integer> classIndexes = new HashMap<OWLClass, Integer>();
+	private List<OWLClass> classes = new ArrayList<OWLClass>();
+	private List<BitSet> directSuperClasses = new ArrayList<BitSet>();
+	private List<BitSet> directSubClasses = new ArrayList<BitSet>();
+
+	private int[] components;
+	private BitSet[] componentSuperClasses;
+
+	// Only the atomic inclusions of the axioms kept by the filter are used; checking them here does not report
+	// ignored axioms, which is left to the conversion
+	public ClassHierarchy(OWLOntology ontology) {
+		ontology.axioms(AxiomType.SUBCLASS_OF).forEach(axiom -> {
+			if (!axiom.getSubClass().isAnonymous() && !axiom.getSuperClass().isAnonymous()
+					&& Filter.isRelevantAxiom(axiom))
+				addSubClass(axiom);
+		});
+		ontology.axioms(AxiomType.EQUIVALENT_CLASSES).forEach(axiom -> {
+			if (axiom.namedClasses().count() > 1 && Filter.isRelevantAxiom(axiom))
+				for (OWLSubClassOfAxiom subClassOfAxiom : axiom.asOWLSubClassOfAxioms())
+					addSubClass(subClassOfAxiom);
+		});
+
+		classify();
+	}
+
+	// Classes with at least one superclass other than themselves
+	public Set<OWLClass> getSubClasses() {
+		Set<OWLClass> subClasses = new HashSet<OWLClass>();
+		for (int i = 0; i < classes.size(); i++)
+			if (hasSuperClasses(i))
+				subClasses.add(classes.get(i));
+		return subClasses;
+	}
+
+	public Set<OWLClass> getSuperClasses(OWLClass subClass) {
+		Integer subClassIndex = classIndexes.get(subClass);
+		if (subClassIndex == null)
+			return Collections.emptySet();
+
+		Set<OWLClass> superClasses = new HashSet<OWLClass>();
+		BitSet superClassIndexes = componentSuperClasses[components[subClassIndex]];
+		for (int i = superClassIndexes.nextSetBit(0); i >= 0; i = superClassIndexes.nextSetBit(i + 1))
+			if (i != subClassIndex)
+				superClasses.add(classes.get(i));
+		return superClasses;
+	}
+
+	// Whether the axiom is an atomic inclusion that follows from the told hierarchy
+	public boolean entails(OWLSubClassOfAxiom subClassOfAxiom) {
+		if (subClassOfAxiom.getSubClass().isAnonymous() || subClassOfAxiom.getSuperClass().isAnonymous())
+			return false;
+		Integer subClassIndex = classIndexes.get(subClassOfAxiom.getSubClass().asOWLClass());
+		Integer superClassIndex = classIndexes.get(subClassOfAxiom.getSuperClass().asOWLClass());
+		return subClassIndex != null && superClassIndex != null && (subClassIndex.equals(superClassIndex)
+				|| componentSuperClasses[components[subClassIndex]].get(superClassIndex));
+	}
+
+	private boolean hasSuperClasses(int classIndex) {
+		BitSet superClassIndexes = componentSuperClasses[components[classIndex]];
+		int cardinality = superClassIndexes.cardinality();
+		return cardinality > 1 || (cardinality == 1 && !superClassIndexes.get(classIndex));
+	}
+
+	private void addSubClass(OWLSubClassOfAxiom subClassOfAxiom) {
+		if (subClassOfAxiom.getSubClass().isAnonymous() || subClassOfAxiom.getSuperClass().isAnonymous())
+			return;
+		int subClassIndex = classIndex(subClassOfAxiom.getSubClass().asOWLClass());
+		int superClassIndex = classIndex(subClassOfAxiom.getSuperClass().asOWLClass());
+		directSuperClasses.get(subClassIndex).set(superClassIndex);
+		directSubClasses.get(superClassIndex).set(subClassIndex);
+	}
+
+	private int classIndex(OWLClass owlClass) {
+		Integer index = classIndexes.get(owlClass);
+		if (index == null) {
+			index = classes.size();
+			classIndexes.put(owlClass, index);
+			classes.add(owlClass);
+			directSuperClasses.add(new BitSet());
+			directSubClasses.add(new BitSet());
+		}
+		return index;
+	}
+
+	private void classify() {
+		int classCount = classes.size();
+
+		// First pass: classes ordered by the completion of a depth-first search over the superclass edges
+		int[] completionOrder = new int[classCount];
+		int completed = 0;
+		boolean[] visited = new boolean[classCount];
+		int[] stack = new int[classCount];
+		int[] nextEdges = new int[classCount];
+		for (int root = 0; root < classCount; root++) {
+			if (visited[root])
+				continue;
+			int stackSize = 0;
+			stack[stackSize++] = root;
+			visited[root] = true;
+			nextEdges[root] = directSuperClasses.get(root).nextSetBit(0);
+			while (stackSize > 0) {
+				int current = stack[stackSize - 1];
+				int next = nextEdges[current];
+				if (next < 0) {
+					completionOrder[completed++] = current;
+					stackSize--;
+					continue;
+				}
+				nextEdges[current] = directSuperClasses.get(current).nextSetBit(next + 1);
+				if (!visited[next]) {
+					visited[next] = true;
+					nextEdges[next] = directSuperClasses.get(next).nextSetBit(0);
+					stack[stackSize++] = next;
+				}
+			}
+		}
+
+		// Second pass: components over the subclass edges in decreasing completion order, which finds them
+		// in topological order (every superclass of a component lies in the same or a later component)
+		components = new int[classCount];
+		Arrays.fill(components, -1);
+		List<BitSet> componentMembers = new ArrayList<BitSet>();
+		for (int i = classCount - 1; i >= 0; i--) {
+			int root = completionOrder[i];
+			if (components[root] >= 0)
+				continue;
+			int component = componentMembers.size();
+			BitSet members = new BitSet();
+			componentMembers.add(members);
+			int stackSize = 0;
+			stack[stackSize++] = root;
+			components[root] = component;
+			while (stackSize > 0) {
+				int current = stack[--stackSize];
+				members.set(current);
+				BitSet subClassIndexes = directSubClasses.get(current);
+				for (int j = subClassIndexes.nextSetBit(0); j >= 0; j = subClassIndexes.nextSetBit(j + 1))
+					if (components[j] < 0) {
+						components[j] = component;
+						stack[stackSize++] = j;
+					}
+			}
+		}
+
+		// Superclasses of each component, from the most general components to the most specific ones
+		componentSuperClasses = new BitSet[componentMembers.size()];
+		for (int component = componentMembers.size() - 1; component >= 0; component--) {
+			BitSet members = componentMembers.get(component);
+			BitSet superClassIndexes = new BitSet();
+			for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+				BitSet directSuperClassIndexes = directSuperClasses.get(i);
+				for (int j = directSuperClassIndexes.nextSetBit(0); j >= 0; j = directSuperClassIndexes
+						.nextSetBit(j + 1)) {
+					superClassIndexes.set(j);
+					if (components[j] != component)
+						superClassIndexes.or(componentSuperClasses[components[j]]);
+				}
+			}
+			// Equivalent classes are superclasses of each other
+			if (members.cardinality() > 1)
+				superClassIndexes.or(members);
+			componentSuperClasses[component] = superClassIndexes;
+		}
+	}
+
+}
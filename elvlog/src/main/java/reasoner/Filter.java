@@ -1,91 +1,209 @@
 package reasoner;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLDataFactory;
-import org.semanticweb.owlapi.model.OWLDataProperty;
-import org.semanticweb.owlapi.model.OWLDatatype;
 import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
 import org.semanticweb.owlapi.model.SWRLAtom;
 import org.semanticweb.owlapi.model.SWRLRule;
 import org.semanticweb.owlapi.profiles.OWL2ELProfile;
 import org.semanticweb.owlapi.profiles.OWLProfileReport;
+import org.semanticweb.owlapi.util.OWLObjectDuplicator;
 
 public class Filter {
-	public static OWL2ELProfile profileChecker = new OWL2ELProfile();
-	public static OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-	public static OWLDataFactory dataFactory = manager.getOWLDataFactory();
+	public static OWLDataFactory dataFactory = OWLManager.getOWLDataFactory();
+
+	// Each worker thread checks its singleton ontologies with its own manager and profile checker
+	private static ThreadLocal<OWLOntologyManager> manager = ThreadLocal
+			.withInitial(() -> OWLManager.createOWLOntologyManager());
+	private static ThreadLocal<OWL2ELProfile> profileChecker = ThreadLocal.withInitial(() -> new OWL2ELProfile());
+
+	// Profile verdicts per axiom shape, see shape(), so structurally equal axioms are checked once. Shared by all
+	// calls; the least recently used shapes are dropped beyond the limit.
+	private static int verdictCacheSize = 1 << 16;
+	private static String shapePref = "urn:elvlog:shape:";
+	private static Map<OWLAxiom, Boolean> verdicts = Collections
+			.synchronizedMap(new LinkedHashMap<OWLAxiom, Boolean>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<OWLAxiom, Boolean> eldest) {
+					return size() > verdictCacheSize;
+				}
+			});
+
+	// Time spent checking axioms, summed over all worker threads
+	private static LongAdder filterNanos = new LongAdder();
+
+	public static long getFilterNanos() {
+		return filterNanos.sum();
+	}
+
+	static void clearVerdicts() {
+		verdicts.clear();
+	}
 
 	public static Set<OWLAxiom> filterDataAndAnnotationAxioms(Set<OWLAxiom> axioms)
 			throws OWLOntologyCreationException {
-		Set<OWLAxiom> filteredAxioms = new HashSet<OWLAxiom>();
-
-		for (OWLAxiom axiom : axioms) {
-			boolean relevantAxiom = true;
-
-			// Check OWLDataProperty occurrences
-			Set<OWLDataProperty> dataProperties = axiom.dataPropertiesInSignature().collect(Collectors.toSet());
-			if (!dataProperties.isEmpty())
-				relevantAxiom = false;
-
-			// Check OWLDatatype occurrences
-			Set<OWLDatatype> datatypes = axiom.datatypesInSignature().collect(Collectors.toSet());
-			if (!datatypes.isEmpty())
-				relevantAxiom = false;
-
-			// Check valid SWRLRules
-			if (axiom.isOfType(AxiomType.SWRL_RULE)) {
-				SWRLRule ruleAxiom = (SWRLRule) axiom;
-				Set<SWRLAtom> ruleAtoms = ruleAxiom.body().collect(Collectors.toSet());
-				ruleAtoms.addAll(ruleAxiom.head().collect(Collectors.toSet()));
-				for (SWRLAtom ruleAtom : ruleAtoms)
-					if (!(ruleAtom.getPredicate() instanceof OWLClass)
-							&& !(ruleAtom.getPredicate() instanceof OWLObjectProperty))
-						relevantAxiom = false;
-			}
-
-			// Check EL membership
-			if (!axiom.isOfType(AxiomType.SWRL_RULE)) {
-				Set<OWLAxiom> singleAxiomSet = new HashSet<OWLAxiom>();
-				singleAxiomSet.add(axiom);
-				singleAxiomSet.addAll(declarationAxioms(axiom));
-				OWLOntology singletonOntology = manager.createOntology(singleAxiomSet);
-				OWLProfileReport report = profileChecker.checkOntology(singletonOntology);
-				if (!report.isInProfile())
-					relevantAxiom = false;
-			}
-
-			// // Check AnnotationAxiom
-			// if (axiom.getAxiomType().equals(AxiomType.ANNOTATION_ASSERTION)
-			// || axiom.getAxiomType().equals(AxiomType.ANNOTATION_PROPERTY_DOMAIN)
-			// || axiom.getAxiomType().equals(AxiomType.ANNOTATION_PROPERTY_RANGE)
-			// || axiom.getAxiomType().equals(AxiomType.SUB_ANNOTATION_PROPERTY_OF))
-			// relevantAxiom = false;
-			//
-			// // Check non-logical axiom
-			// if (!axiom.isLogicalAxiom())
-			// relevantAxiom = false;
-
-			if (relevantAxiom)
-				filteredAxioms.add(axiom);
-			else
-				System.out.println("WARNING!!! The following axiom is ignored." + "\n" + " > "
-						+ axiom.getAxiomType().toString() + "\n" + " > " + axiom + "\n");
+		Set<OWLAxiom> ignoredAxioms = ConcurrentHashMap.newKeySet();
+		try {
+			Set<OWLAxiom> relevantAxioms = filterDataAndAnnotationAxioms(axioms.stream(), ignoredAxioms)
+					.collect(Collectors.toSet());
+			reportIgnoredAxioms(ignoredAxioms);
+			return relevantAxioms;
+		} catch (FilterException e) {
+			throw e.getCause();
+		}
+	}
+
+	// Filters the axioms in parallel as they are consumed; ontology creation failures surface as FilterException.
+	// Ignored axioms are added to the given concurrent set, to be reported once the stream has been consumed.
+	public static Stream<OWLAxiom> filterDataAndAnnotationAxioms(Stream<OWLAxiom> axioms,
+			Set<OWLAxiom> ignoredAxioms) {
+		return axioms.parallel().filter(axiom -> {
+			if (isRelevantAxiom(axiom))
+				return true;
+			ignoredAxioms.add(axiom);
+			return false;
+		});
+	}
+
+	// In sorted order, so that the output does not depend on the worker threads
+	public static void reportIgnoredAxioms(Set<OWLAxiom> ignoredAxioms) {
+		for (OWLAxiom axiom : new TreeSet<OWLAxiom>(ignoredAxioms))
+			System.out.println("WARNING!!! The following axiom is ignored." + "\n" + " > "
+					+ axiom.getAxiomType().toString() + "\n" + " > " + axiom + "\n");
+	}
+
+	static boolean isRelevantAxiom(OWLAxiom axiom) {
+		long start = System.nanoTime();
+		boolean verdict = checkAxiom(axiom);
+		filterNanos.add(System.nanoTime() - start);
+		return verdict;
+	}
+
+	private static boolean checkAxiom(OWLAxiom axiom) {
+
+		// Check OWLDataProperty occurrences
+		if (axiom.dataPropertiesInSignature().findAny().isPresent())
+			return false;
+
+		// Check OWLDatatype occurrences
+		if (axiom.datatypesInSignature().findAny().isPresent())
+			return false;
+
+		// Check trivially EL axioms
+		if (isTriviallyEL(axiom))
+			return true;
+
+		// Check valid SWRLRules
+		if (axiom.isOfType(AxiomType.SWRL_RULE)) {
+			SWRLRule ruleAxiom = (SWRLRule) axiom;
+			Set<SWRLAtom> ruleAtoms = ruleAxiom.body().collect(Collectors.toSet());
+			ruleAtoms.addAll(ruleAxiom.head().collect(Collectors.toSet()));
+			for (SWRLAtom ruleAtom : ruleAtoms)
+				if (!(ruleAtom.getPredicate() instanceof OWLClass)
+						&& !(ruleAtom.getPredicate() instanceof OWLObjectProperty))
+					return false;
+			return true;
+		}
+
+		// // Check AnnotationAxiom
+		// if (axiom.getAxiomType().equals(AxiomType.ANNOTATION_ASSERTION)
+		// || axiom.getAxiomType().equals(AxiomType.ANNOTATION_PROPERTY_DOMAIN)
+		// || axiom.getAxiomType().equals(AxiomType.ANNOTATION_PROPERTY_RANGE)
+		// || axiom.getAxiomType().equals(AxiomType.SUB_ANNOTATION_PROPERTY_OF))
+		// relevantAxiom = false;
+		//
+		// // Check non-logical axiom
+		// if (!axiom.isLogicalAxiom())
+		// relevantAxiom = false;
+
+		// Check EL membership
+		OWLAxiom shape = shape(axiom);
+		Boolean verdict = verdicts.get(shape);
+		if (verdict == null) {
+			verdict = isInProfile(shape);
+			verdicts.put(shape, verdict);
 		}
+		return verdict;
+	}
+
+	// The axiom without annotations and with the IRIs of its entities, other than built-in entities and reserved
+	// vocabulary, replaced in signature order. The renaming is one to one, so the shape has the same verdict.
+	private static OWLAxiom shape(OWLAxiom axiom) {
+		Map<IRI, IRI> iris = new HashMap<IRI, IRI>();
+		Map<OWLEntity, IRI> renaming = new HashMap<OWLEntity, IRI>();
+		axiom.signature().forEachOrdered(entity -> {
+			if (!entity.isBuiltIn() && !entity.getIRI().isReservedVocabulary())
+				renaming.put(entity, iris.computeIfAbsent(entity.getIRI(), iri -> IRI.create(shapePref + iris.size())));
+		});
+		return new OWLObjectDuplicator(renaming, manager.get()).duplicateObject(axiom.getAxiomWithoutAnnotations());
+	}
+
+	private static boolean isInProfile(OWLAxiom axiom) {
+		Set<OWLAxiom> singleAxiomSet = new HashSet<OWLAxiom>();
+		singleAxiomSet.add(axiom);
+		singleAxiomSet.addAll(declarationAxioms(axiom));
+		OWLOntologyManager threadManager = manager.get();
+		OWLOntology singletonOntology;
+		try {
+			singletonOntology = threadManager.createOntology(singleAxiomSet);
+		} catch (OWLOntologyCreationException e) {
+			throw new FilterException(e);
+		}
+		try {
+			OWLProfileReport report = profileChecker.get().checkOntology(singletonOntology);
+			return report.isInProfile();
+		} finally {
+			threadManager.removeOntology(singletonOntology);
+		}
+	}
 
-		return filteredAxioms;
+	private static boolean isTriviallyEL(OWLAxiom axiom) {
+		switch (axiom.getAxiomType().toString()) {
+		case "SubClassOf":
+			// A sqsubseteq B
+			OWLSubClassOfAxiom subClassOfAxiom = (OWLSubClassOfAxiom) axiom;
+			return !subClassOfAxiom.getSubClass().isAnonymous() && !subClassOfAxiom.getSuperClass().isAnonymous();
+
+		case "SubObjectPropertyOf":
+			// R sqsubseteq S
+			OWLSubObjectPropertyOfAxiom subObjectPropertyOfAxiom = (OWLSubObjectPropertyOfAxiom) axiom;
+			return subObjectPropertyOfAxiom.getSubProperty().isNamed()
+					&& subObjectPropertyOfAxiom.getSuperProperty().isNamed();
+
+		case "Declaration":
+			// Declaration(A), Declaration(R), Declaration(a)
+			OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+			return entity.isOWLClass() || entity.isOWLObjectProperty() || entity.isOWLNamedIndividual();
+
+		default:
+			return false;
+		}
 	}
 
 	private static Collection<OWLDeclarationAxiom> declarationAxioms(OWLAxiom axiom) {
@@ -101,4 +219,18 @@ public class Filter {
 		return declarationAxioms;
 	}
 
+	// Carries checked ontology creation failures out of the parallel stream
+	static class FilterException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		FilterException(OWLOntologyCreationException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized OWLOntologyCreationException getCause() {
+			return (OWLOntologyCreationException) super.getCause();
+		}
+	}
+
 }
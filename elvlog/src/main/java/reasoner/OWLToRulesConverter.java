@@ -1,23 +1,39 @@
 package reasoner;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLClassExpression;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLDisjointClassesAxiom;
 import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
-import org.semanticweb.owlapi.model.OWLEquivalentObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLIndividual;
 import org.semanticweb.owlapi.model.OWLIrreflexiveObjectPropertyAxiom;
 import org.semanticweb.owlapi.model.OWLObjectHasSelf;
 import org.semanticweb.owlapi.model.OWLObjectHasValue;
+import org.semanticweb.owlapi.model.OWLObject;
 import org.semanticweb.owlapi.model.OWLObjectIntersectionOf;
 import org.semanticweb.owlapi.model.OWLObjectOneOf;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
@@ -29,9 +45,7 @@ import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLReflexiveObjectPropertyAxiom;
 import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
-import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
 import org.semanticweb.owlapi.model.OWLSubPropertyChainOfAxiom;
-import org.semanticweb.owlapi.model.OWLTransitiveObjectPropertyAxiom;
 import org.semanticweb.owlapi.model.SWRLArgument;
 import org.semanticweb.owlapi.model.SWRLAtom;
 import org.semanticweb.owlapi.model.SWRLIndividualArgument;
@@ -51,92 +65,335 @@ import org.semanticweb.vlog4j.core.model.implementation.Expressions;
 import uk.ac.manchester.cs.owl.owlapi.OWLObjectHasSelfImpl;
 import uk.ac.manchester.cs.owl.owlapi.OWLObjectSomeValuesFromImpl;
 import uk.ac.manchester.cs.owl.owlapi.OWLSubClassOfAxiomImpl;
-import uk.ac.manchester.cs.owl.owlapi.OWLSubPropertyChainAxiomImpl;
 
+// Axioms, hierarchies and signatures are processed in sorted order and fresh constants are named after the
+// existential restriction they witness, so the same ontology always gives the same rules in the same order.
 public class OWLToRulesConverter {
 
-	private Set<Rule> rules = new HashSet<Rule>();
-	private Set<Predicate> predicates = new HashSet<Predicate>();
-
-	private Set<Rule> subRoleSelfRules = new HashSet<Rule>();
+	// Part of the key of cached rule sets: increase it with every change to the rules an ontology is turned into
+	public static int rulesVersion = 9;
+
+	// Only collected without a rule consumer
+	private Set<Rule> rules;
+	private Set<Predicate> predicates = new LinkedHashSet<Predicate>();
+	private Consumer<Rule> ruleConsumer;
+	private RuleProvenance provenance;
+
+	// Statistics: axioms transformed and rules emitted per axiom type
+	private Map<String, Integer> axiomCounts = new TreeMap<String, Integer>();
+	private Map<String, Integer> ruleCounts = new TreeMap<String, Integer>();
+	private String currentRuleSource;
+	private String currentAxiom;
+	private long ontologyAxiomCount;
+
+	private Set<Rule> subRoleSelfRules = new LinkedHashSet<Rule>();
+	private RoleHierarchy roleHierarchy;
+	private ClassHierarchy classHierarchy;
+	private Set<String> transitiveRoleNames = new TreeSet<String>();
 	private boolean containsSelf = false;
 
-	private static String variablePref = "V";
+	private TermDictionary dictionary = new TermDictionary();
+	private SWRLRuleCompiler swrlRuleCompiler = new SWRLRuleCompiler(namedIndividualPredicate());
 	private int freshVarCounter = 0;
 	private static Variable vX = Expressions.makeUniversalVariable("VX");
 	private static Variable vY = Expressions.makeUniversalVariable("VY");
 
-	private static String constantPref = "cons";
-	private int freshConstCounter = 0;
+	private static List<AxiomType<? extends OWLAxiom>> axiomTypes = AxiomType.AXIOM_TYPES.stream()
+			.sorted(Comparator.comparingInt(AxiomType::getIndex)).collect(Collectors.toList());
+
+	private static String witnessRuleSource = "ExistentialWitness";
+	private Map<OWLObjectSomeValuesFrom, Witness> witnesses = new LinkedHashMap<OWLObjectSomeValuesFrom, Witness>();
+	private boolean thingInBodies = false;
 
 	OWLDataFactory factory = OWLManager.getOWLDataFactory();
 
 	public Set<Rule> getRules() {
-		return rules;
+		return rules == null ? new LinkedHashSet<Rule>() : rules;
 	}
 
 	public Set<Predicate> getPredicates() {
 		return predicates;
 	}
 
+	public Map<String, Integer> getAxiomCounts() {
+		return axiomCounts;
+	}
+
+	public Map<String, Integer> getRuleCounts() {
+		return ruleCounts;
+	}
+
+	public long getIgnoredAxiomCount() {
+		long transformedAxiomCount = 0;
+		for (int axiomCount : axiomCounts.values())
+			transformedAxiomCount += axiomCount;
+		return ontologyAxiomCount - transformedAxiomCount;
+	}
+
 	public OWLToRulesConverter(OWLOntology ontology) throws OWLOntologyCreationException {
+		rules = new LinkedHashSet<Rule>();
+		this.ruleConsumer = rules::add;
+		convert(ontology, true);
+	}
+
+	// Streams every rule to the given consumer instead of collecting them in getRules()
+	public OWLToRulesConverter(OWLOntology ontology, Consumer<Rule> ruleConsumer)
+			throws OWLOntologyCreationException {
+		this(ontology, ruleConsumer, true);
+	}
+
+	// Without loading rules the ABox has to be provided for each predicate directly
+	public OWLToRulesConverter(OWLOntology ontology, Consumer<Rule> ruleConsumer, boolean addLoadingRules)
+			throws OWLOntologyCreationException {
+		this.ruleConsumer = ruleConsumer;
+		convert(ontology, addLoadingRules);
+	}
 
-		// Filter axioms in the ontology
-		Set<OWLAxiom> filteredAxioms = Filter
-				.filterDataAndAnnotationAxioms(ontology.axioms().collect(Collectors.toSet()));
+	// Also records the source axiom of every rule
+	public OWLToRulesConverter(OWLOntology ontology, Consumer<Rule> ruleConsumer, boolean addLoadingRules,
+			RuleProvenance provenance) throws OWLOntologyCreationException {
+		this.ruleConsumer = ruleConsumer;
+		this.provenance = provenance;
+		convert(ontology, addLoadingRules);
+	}
 
-		// Transforming axioms to rules
-		for (OWLAxiom filteredAxiom : filteredAxioms)
-			transformAxiomToRule(filteredAxiom);
+	private void convert(OWLOntology ontology, boolean addLoadingRules) throws OWLOntologyCreationException {
+
+		// Computing the class and role hierarchies from the axioms of their types
+		classHierarchy = new ClassHierarchy(ontology);
+		roleHierarchy = new RoleHierarchy(ontology);
+		for (OWLObjectProperty transitiveRole : roleHierarchy.getTransitiveRoles())
+			transitiveRoleNames.add(transitiveRole.toString());
+
+		// Filtering and transforming axioms to rules as they are streamed. Axioms are sorted one type at a time,
+		// in the order of the types, which is the order of all axioms sorted together.
+		ontologyAxiomCount = ontology.getAxiomCount();
+		Set<OWLAxiom> ignoredAxioms = ConcurrentHashMap.newKeySet();
+		try {
+			for (AxiomType<? extends OWLAxiom> axiomType : axiomTypes) {
+				Stream<OWLAxiom> axioms = ontology.axioms(axiomType).map(axiom -> (OWLAxiom) axiom).sorted();
+				if (axiomType.equals(AxiomType.IRREFLEXIVE_OBJECT_PROPERTY))
+					axioms.forEachOrdered(axiom -> transformIrreflexiveAxiom(axiom, ignoredAxioms));
+				else
+					Filter.filterDataAndAnnotationAxioms(axioms, ignoredAxioms)
+							.forEachOrdered(this::transformAxiomToRule);
+			}
+		} catch (Filter.FilterException e) {
+			throw e.getCause();
+		}
+		Filter.reportIgnoredAxioms(ignoredAxioms);
+
+		// Adding the closure of the class hierarchy
+		currentRuleSource = "ClassHierarchy";
+		currentAxiom = null;
+		for (OWLClass subClass : sorted(classHierarchy.getSubClasses()))
+			for (OWLClass superClass : sorted(classHierarchy.getSuperClasses(subClass)))
+				addRule(Expressions.makeRule(Expressions.makePositiveLiteral(dictionary.predicate(superClass, 1), vX),
+						Expressions.makePositiveLiteral(dictionary.predicate(subClass, 1), vX)));
+
+		// Adding the closure of the role hierarchy
+		currentRuleSource = "RoleHierarchy";
+		for (OWLObjectProperty subRole : sorted(roleHierarchy.getSubRoles()))
+			for (OWLObjectProperty superRole : sorted(roleHierarchy.getSuperRoles(subRole)))
+				processSubObjectPropertyAxiom(subRole, superRole);
+
+		// Adding linear rules for transitive roles: R(x, y) :- RBase(x, y) and R(x, z) :- RBase(x, y), R(y, z)
+		currentRuleSource = "TransitiveRoles";
+		for (String transitiveRoleName : transitiveRoleNames) {
+			Variable vZ = Expressions.makeUniversalVariable("VZ");
+			Predicate role = dictionary.specialPredicate(transitiveRoleName, 2);
+			Predicate baseRole = dictionary.specialPredicate(SpecialPreds.basePredName(transitiveRoleName), 2);
+			recordRule(Expressions.makeRule(Expressions.makePositiveLiteral(role, vX, vY),
+					Expressions.makePositiveLiteral(baseRole, vX, vY)));
+			recordRule(Expressions.makeRule(
+					Expressions.makePositiveConjunction(Expressions.makePositiveLiteral(role, vX, vZ)),
+					Expressions.makeConjunction(Expressions.makePositiveLiteral(baseRole, vX, vY),
+							Expressions.makePositiveLiteral(role, vY, vZ))));
+		}
 
 		// Adding self rules
+		currentRuleSource = "SelfRules";
 		if (containsSelf) {
-			ontology.objectPropertiesInSignature().forEach(role -> {
-				PositiveLiteral roleXX = Expressions.makePositiveLiteral(role.toString(), vX, vX);
-				PositiveLiteral namedX = Expressions.makePositiveLiteral(SpecialPreds.namedPredName, vX);
-				PositiveLiteral selfRoleX = Expressions.makePositiveLiteral(roleToRoleSelfConcept(role), vX);
+			ontology.objectPropertiesInSignature().sorted().forEachOrdered(role -> {
+				PositiveLiteral roleXX = Expressions.makePositiveLiteral(dictionary.predicate(role, 2), vX, vX);
+				PositiveLiteral namedX = Expressions.makePositiveLiteral(namedIndividualPredicate(), vX);
+				PositiveLiteral selfRoleX = Expressions.makePositiveLiteral(dictionary.selfPredicate(role), vX);
 
-				rules.add(Expressions.makeRule(Expressions.makePositiveConjunction(selfRoleX),
+				addRule(Expressions.makeRule(Expressions.makePositiveConjunction(selfRoleX),
 						Expressions.makeConjunction(roleXX, namedX)));
-				rules.add(Expressions.makeRule(Expressions.makePositiveConjunction(roleXX),
+				addRule(Expressions.makeRule(Expressions.makePositiveConjunction(roleXX),
 						Expressions.makeConjunction(selfRoleX, namedX)));
 			});
-			rules.addAll(subRoleSelfRules);
+			for (Rule subRoleSelfRule : subRoleSelfRules)
+				addRule(subRoleSelfRule);
 		}
 
-		// Computing the set of all predicates
-		for (Rule rule : rules) {
-			Set<Literal> ruleAtoms = new HashSet<Literal>();
-			ruleAtoms.addAll(rule.getBody().getLiterals());
-			ruleAtoms.addAll(rule.getHead().getLiterals());
-			for (Literal atom : ruleAtoms)
-				predicates.add(atom.getPredicate());
+		// Fresh constants are only instances of owl:Thing if the body of some rule, DL-safe or not, needs it
+		currentRuleSource = witnessRuleSource;
+		currentAxiom = null;
+		if (thingInBodies)
+			for (Witness witness : witnesses.values())
+				addRule(Expressions.makeRule(Expressions.makePositiveLiteral(
+						dictionary.specialPredicate(SpecialPreds.owlThingPredName, 1), witness.constant),
+						witness.roleAtom));
+
+		// Adding the DL-safe rules, which need the positions of anonymous individuals in all other rules
+		currentRuleSource = "Rule";
+		if (!swrlRuleCompiler.isEmpty()) {
+			for (Map.Entry<Rule, List<String>> swrlRule : swrlRuleCompiler.compile().entrySet()) {
+				// Rules for shared joins come from every rule sharing them
+				currentAxiom = swrlRule.getValue().get(0);
+				addRule(swrlRule.getKey());
+				if (provenance != null)
+					for (String sharingAxiom : swrlRule.getValue().subList(1, swrlRule.getValue().size()))
+						provenance.record(currentRuleSource, sharingAxiom, swrlRule.getKey());
+			}
+			ruleCounts.put("DroppedNamedIndividualGuards", swrlRuleCompiler.getDroppedGuardCount());
 		}
-		predicates.add(SpecialPreds.triplePred);
 
 		// Add loading rules
+		currentRuleSource = "LoadingRules";
+		currentAxiom = null;
+		if (addLoadingRules)
+			for (Rule loadingRule : loadingRules(new ArrayList<Predicate>(predicates)))
+				addRule(loadingRule);
+	}
+
+	// Rules that load each predicate from the triple relation; transitive roles are loaded into their base
+	public static List<Rule> loadingRules(Collection<Predicate> predicates) {
+		Set<String> predicateNames = new HashSet<String>();
+		for (Predicate predicate : predicates)
+			predicateNames.add(predicate.getName());
+
+		List<Rule> loadingRules = new ArrayList<Rule>();
 		for (Predicate predicate : predicates) {
+			if (SpecialPreds.isJoinPredicate(predicate))
+				continue;
+			String dataPredName = trim(SpecialPreds.dataPredName(predicate));
 			if (predicate.getArity() == 1)
-				rules.add(Expressions.makeRule(Expressions.makePositiveLiteral(predicate, vX),
+				loadingRules.add(Expressions.makeRule(Expressions.makePositiveLiteral(predicate, vX),
 						Expressions.makePositiveLiteral(SpecialPreds.triplePredName, vX, vY,
-								Expressions.makeAbstractConstant(trim(predicate.getName())))));
-			else if (predicate.getArity() == 2)
-				rules.add(Expressions.makeRule(Expressions.makePositiveLiteral(predicate, vX, vY),
+								Expressions.makeAbstractConstant(dataPredName))));
+			else if (predicate.getArity() == 2
+					&& !predicateNames.contains(SpecialPreds.basePredName(predicate.getName())))
+				loadingRules.add(Expressions.makeRule(Expressions.makePositiveLiteral(predicate, vX, vY),
 						Expressions.makePositiveLiteral(SpecialPreds.triplePredName, vX,
-								Expressions.makeAbstractConstant(trim(predicate.getName())), vY)));
+								Expressions.makeAbstractConstant(dataPredName), vY)));
+		}
+		return loadingRules;
+	}
+
+	// Everything derived into a transitive role but transitivity itself goes to its base relation; returns the
+	// rule as recorded
+	private Rule addRule(Rule rule) {
+		if (transitiveRoleNames.isEmpty())
+			return recordRule(rule);
+
+		List<PositiveLiteral> head = new ArrayList<PositiveLiteral>();
+		for (PositiveLiteral headAtom : rule.getHead().getLiterals()) {
+			Predicate headPredicate = headAtom.getPredicate();
+			if (headPredicate.getArity() == 2 && transitiveRoleNames.contains(headPredicate.getName()))
+				head.add(Expressions.makePositiveLiteral(
+						dictionary.specialPredicate(SpecialPreds.basePredName(headPredicate.getName()), 2),
+						headAtom.getTerms()));
+			else
+				head.add(headAtom);
+		}
+		return recordRule(Expressions.makeRule(Expressions.makePositiveConjunction(head), rule.getBody()));
+	}
+
+	// Records the predicates of the rule and hands it over to the rule consumer
+	private Rule recordRule(Rule rule) {
+		for (Literal atom : rule.getBody().getLiterals()) {
+			predicates.add(atom.getPredicate());
+			thingInBodies |= atom.getPredicate().getName().equals(SpecialPreds.owlThingPredName);
 		}
+		for (Literal atom : rule.getHead().getLiterals())
+			predicates.add(atom.getPredicate());
+		ruleCounts.merge(currentRuleSource, 1, Integer::sum);
+		swrlRuleCompiler.observeRule(rule);
+		if (provenance != null)
+			provenance.record(currentRuleSource, currentAxiom, rule);
+		ruleConsumer.accept(rule);
+		return rule;
+	}
+
+	private static <T extends OWLObject> List<T> sorted(Collection<T> objects) {
+		List<T> sortedObjects = new ArrayList<T>(objects);
+		Collections.sort(sortedObjects);
+		return sortedObjects;
+	}
+
+	// Fresh constant of an existential restriction, the role assertions pointing to it, the rule deriving the
+	// facts about the filler (none for owl:Thing) and the axioms using the restriction
+	private static class Witness {
+		private AbstractConstant constant;
+		private PositiveLiteral roleAtom;
+		private Rule fillerRule;
+		private Set<String> axioms = new HashSet<String>();
+	}
+
+	// Structurally equal existential restrictions in rule heads share a fresh constant, named after the
+	// restriction. The facts about the filler are derived once for all of them, by a rule triggered by the
+	// role assertions pointing to the constant, instead of in the head of every rule using the restriction.
+	// The rule comes from every axiom using the restriction.
+	private AbstractConstant witness(OWLObjectSomeValuesFrom existConceptExp) {
+		Witness witness = witnesses.get(existConceptExp);
+		if (witness != null) {
+			if (provenance != null && witness.fillerRule != null && witness.axioms.add(currentAxiom))
+				provenance.record(witnessRuleSource, currentAxiom, witness.fillerRule);
+			return witness.constant;
+		}
+
+		witness = new Witness();
+		UUID hash = UUID.nameUUIDFromBytes(existConceptExp.toString().getBytes(StandardCharsets.UTF_8));
+		witness.constant = Expressions.makeAbstractConstant(
+				SpecialPreds.freshConstantPref + String.format("%016x", hash.getMostSignificantBits()));
+		witness.roleAtom = Expressions.makePositiveLiteral(dictionary.predicate(existConceptExp.getProperty(), 2),
+				vX, witness.constant);
+		witness.axioms.add(currentAxiom);
+		witnesses.put(existConceptExp, witness);
+
+		OWLClassExpression filler = existConceptExp.getFiller();
+		if (!filler.isOWLThing()) {
+			String ruleSource = currentRuleSource;
+			currentRuleSource = witnessRuleSource;
+			witness.fillerRule = addRule(Expressions.makePositiveLiteralsRule(
+					Expressions.makePositiveConjunction(conceptExpToAtoms(filler, witness.constant, true)),
+					Expressions.makePositiveConjunction(witness.roleAtom)));
+			currentRuleSource = ruleSource;
+		}
+		return witness.constant;
+	}
+
+	// Only for benchmarks, which convert the same expressions repeatedly
+	void clearWitnesses() {
+		witnesses.clear();
 	}
 
 	private static String trim(String name) {
 		return name.substring(1, name.length() - 1);
 	}
 
+	// Irreflexive properties are not in OWL 2 EL, so they bypass Filter, but Irref(R) for a named R only
+	// becomes a rule deriving owl:Nothing
+	private void transformIrreflexiveAxiom(OWLAxiom axiom, Set<OWLAxiom> ignoredAxioms) {
+		if (((OWLIrreflexiveObjectPropertyAxiom) axiom).getProperty().isNamed())
+			transformAxiomToRule(axiom);
+		else
+			ignoredAxioms.add(axiom);
+	}
+
 	private void transformAxiomToRule(OWLAxiom axiom) {
+		currentRuleSource = axiom.getAxiomType().toString();
+		currentAxiom = axiom.getAxiomWithoutAnnotations().toString();
+		axiomCounts.merge(currentRuleSource, 1, Integer::sum);
 
 		switch (axiom.getAxiomType().toString()) {
 		case "EquivalentClasses":
 			// C1 equiv ... equiv Cn
-			for (OWLSubClassOfAxiom equivSubClassOfAxiom : ((OWLEquivalentClassesAxiom) axiom).asOWLSubClassOfAxioms())
+			for (OWLSubClassOfAxiom equivSubClassOfAxiom : sorted(
+					((OWLEquivalentClassesAxiom) axiom).asOWLSubClassOfAxioms()))
 				processSubClassOfAxiom(equivSubClassOfAxiom);
 			break;
 
@@ -147,7 +404,8 @@ public class OWLToRulesConverter {
 
 		case "DisjointClasses":
 			// C1 sqcap C2 \sqsubseteq \bot, C1 \sqcap C3 \sqsubseteq \bot, ...
-			for (OWLSubClassOfAxiom disjSubClassOfAxiom : ((OWLDisjointClassesAxiom) axiom).asOWLSubClassOfAxioms())
+			for (OWLSubClassOfAxiom disjSubClassOfAxiom : sorted(
+					((OWLDisjointClassesAxiom) axiom).asOWLSubClassOfAxioms()))
 				processSubClassOfAxiom(disjSubClassOfAxiom);
 			break;
 
@@ -165,8 +423,8 @@ public class OWLToRulesConverter {
 			OWLObjectPropertyRangeAxiom rangeAxiom = (OWLObjectPropertyRangeAxiom) axiom;
 			Conjunction<PositiveLiteral> head = conceptExpToPosConjunction(rangeAxiom.getRange(), vY, true);
 			Conjunction<PositiveLiteral> body = Expressions.makePositiveConjunction(
-					Expressions.makePositiveLiteral(rangeAxiom.getProperty().toString(), vX, vY));
-			rules.add(Expressions.makePositiveLiteralsRule(head, body));
+					Expressions.makePositiveLiteral(dictionary.predicate(rangeAxiom.getProperty(), 2), vX, vY));
+			addRule(Expressions.makePositiveLiteralsRule(head, body));
 			break;
 
 		case "ReflexiveObjectProperty":
@@ -178,8 +436,8 @@ public class OWLToRulesConverter {
 			containsSelf = true;
 			break;
 
-		case "IrrefexiveObjectProperty":
-			// Irref(R)
+		case "IrreflexiveObjectProperty":
+			// Irref(R), outside OWL 2 EL and so rejected by Filter; see transformIrreflexiveAxiom
 			OWLIrreflexiveObjectPropertyAxiom irreflexiveAxiom = ((OWLIrreflexiveObjectPropertyAxiom) axiom);
 			OWLObjectHasSelf selfSubClass = new OWLObjectHasSelfImpl(irreflexiveAxiom.getProperty());
 			processSubClassOfAxiom(
@@ -188,17 +446,11 @@ public class OWLToRulesConverter {
 			break;
 
 		case "EquivalentObjectProperties":
-			// R equiv S
-			OWLEquivalentObjectPropertiesAxiom equivPropertiesAxiom = (OWLEquivalentObjectPropertiesAxiom) axiom;
-			for (OWLSubObjectPropertyOfAxiom equivSubObjectPropertyAxiom : equivPropertiesAxiom
-					.asSubObjectPropertyOfAxioms()) {
-				processSubObjectPropertyAxiom(equivSubObjectPropertyAxiom);
-			}
+			// R equiv S, covered by the closure of the role hierarchy
 			break;
 
 		case "SubObjectPropertyOf":
-			// R sqsubseteq S
-			processSubObjectPropertyAxiom((OWLSubObjectPropertyOfAxiom) axiom);
+			// R sqsubseteq S, covered by the closure of the role hierarchy
 			break;
 
 		case "SubPropertyChainOf":
@@ -207,14 +459,7 @@ public class OWLToRulesConverter {
 			break;
 
 		case "TransitiveObjectProperty":
-			// Tran(R)
-			OWLTransitiveObjectPropertyAxiom transitivityAxiom = (OWLTransitiveObjectPropertyAxiom) axiom;
-			OWLObjectPropertyExpression transitiveProperty = transitivityAxiom.getProperty();
-			List<OWLObjectPropertyExpression> chain = new ArrayList<OWLObjectPropertyExpression>();
-			chain.add(transitiveProperty);
-			chain.add(transitiveProperty);
-			processChainOfAxiom(
-					new OWLSubPropertyChainAxiomImpl(chain, transitiveProperty, new HashSet<OWLAnnotation>()));
+			// Tran(R), covered by the linear rules for transitive roles
 			break;
 
 		case "Rule":
@@ -261,65 +506,78 @@ public class OWLToRulesConverter {
 	}
 
 	private void processSubClassOfAxiom(OWLSubClassOfAxiom subClassOfAxiom) {
+		// A sqsubseteq B is covered by the closure of the class hierarchy
+		if (classHierarchy.entails(subClassOfAxiom))
+			return;
+
 		freshVarCounter = 0;
-		rules.add(Expressions.makePositiveLiteralsRule(
+		addRule(Expressions.makePositiveLiteralsRule(
 				conceptExpToPosConjunction(subClassOfAxiom.getSuperClass(), vX, true),
 				conceptExpToPosConjunction(subClassOfAxiom.getSubClass(), vX, false)));
 	}
 
-	private void processSubObjectPropertyAxiom(OWLSubObjectPropertyOfAxiom subObjectPropertyOfAxiom) {
-		OWLObjectProperty subRole = (OWLObjectProperty) subObjectPropertyOfAxiom.getSubProperty();
-		OWLObjectProperty superRole = (OWLObjectProperty) subObjectPropertyOfAxiom.getSuperProperty();
-
-		rules.add(Expressions.makeRule(Expressions.makePositiveLiteral(superRole.toString(), vX, vY),
-				Expressions.makePositiveLiteral(subRole.toString(), vX, vY)));
-		rules.add(Expressions.makeRule(Expressions.makePositiveLiteral(roleToRoleSelfConcept(superRole), vX),
-				Expressions.makePositiveLiteral(roleToRoleSelfConcept(subRole), vX)));
+	private void processSubObjectPropertyAxiom(OWLObjectProperty subRole, OWLObjectProperty superRole) {
+		addRule(Expressions.makeRule(Expressions.makePositiveLiteral(dictionary.predicate(superRole, 2), vX, vY),
+				Expressions.makePositiveLiteral(dictionary.predicate(subRole, 2), vX, vY)));
+		subRoleSelfRules.add(
+				Expressions.makeRule(Expressions.makePositiveLiteral(dictionary.selfPredicate(superRole), vX),
+						Expressions.makePositiveLiteral(dictionary.selfPredicate(subRole), vX)));
 	}
 
 	private void processChainOfAxiom(OWLSubPropertyChainOfAxiom chainOfAxiom) {
+		if (RoleHierarchy.isTransitivityAxiom(chainOfAxiom))
+			return;
+
 		freshVarCounter = 0;
 		List<OWLObjectPropertyExpression> roleChain = chainOfAxiom.getPropertyChain();
 		ArrayList<PositiveLiteral> bodyAtoms = new ArrayList<PositiveLiteral>();
 		for (OWLObjectPropertyExpression chainedRole : roleChain)
-			bodyAtoms.add(Expressions.makePositiveLiteral(chainedRole.toString(),
-					Expressions.makeUniversalVariable(variablePref + Integer.toString(freshVarCounter)),
-					Expressions.makeUniversalVariable(variablePref + Integer.toString(++freshVarCounter))));
+			bodyAtoms.add(Expressions.makePositiveLiteral(dictionary.predicate(chainedRole, 2),
+					TermDictionary.variable(freshVarCounter), TermDictionary.variable(++freshVarCounter)));
 		Conjunction<PositiveLiteral> body = Expressions.makePositiveConjunction(bodyAtoms);
-		Conjunction<PositiveLiteral> head = Expressions.makePositiveConjunction(Expressions.makePositiveLiteral(
-				chainOfAxiom.getSuperProperty().toString(), Expressions.makeUniversalVariable(variablePref + "0"),
-				Expressions.makeUniversalVariable(variablePref + freshVarCounter)));
-		rules.add(Expressions.makePositiveLiteralsRule(head, body));
+
+		// The chain is folded into every super role of S, which saves a round of the role hierarchy rules
+		List<OWLObjectPropertyExpression> headRoles = new ArrayList<OWLObjectPropertyExpression>();
+		headRoles.add(chainOfAxiom.getSuperProperty());
+		if (chainOfAxiom.getSuperProperty().isNamed()) {
+			OWLObjectProperty superRole = chainOfAxiom.getSuperProperty().asOWLObjectProperty();
+			headRoles.addAll(sorted(roleHierarchy.getSuperRoles(superRole)));
+		}
+		ArrayList<PositiveLiteral> headAtoms = new ArrayList<PositiveLiteral>();
+		for (OWLObjectPropertyExpression headRole : headRoles)
+			headAtoms.add(Expressions.makePositiveLiteral(dictionary.predicate(headRole, 2), TermDictionary.variable(0),
+					TermDictionary.variable(freshVarCounter)));
+		Conjunction<PositiveLiteral> head = Expressions.makePositiveConjunction(headAtoms);
+		addRule(Expressions.makePositiveLiteralsRule(head, body));
 	}
 
+	// Compiled once all other rules are known, see SWRLRuleCompiler
 	private void processSWRLRule(SWRLRule safeRule) {
 		freshVarCounter = 0;
-		Set<SWRLAtom> swrlBodyAtoms = safeRule.body().collect(Collectors.toSet());
-		Set<SWRLAtom> swrlHeadAtoms = safeRule.head().collect(Collectors.toSet());
-		Set<SWRLAtom> swrlAtoms = new HashSet<SWRLAtom>();
+		List<SWRLAtom> swrlBodyAtoms = safeRule.body().collect(Collectors.toList());
+		List<SWRLAtom> swrlHeadAtoms = safeRule.head().collect(Collectors.toList());
+		List<SWRLAtom> swrlAtoms = new ArrayList<SWRLAtom>();
 		swrlAtoms.addAll(swrlBodyAtoms);
 		swrlAtoms.addAll(swrlHeadAtoms);
 
 		HashMap<SWRLArgument, UniversalVariable> safeVarToUnivVarMap = new HashMap<SWRLArgument, UniversalVariable>();
 		for (SWRLAtom safeAtom : swrlAtoms)
-			for (SWRLArgument safeArgument : safeAtom.allArguments().collect(Collectors.toSet()))
+			for (SWRLArgument safeArgument : safeAtom.allArguments().collect(Collectors.toList()))
 				if (safeArgument instanceof SWRLVariable)
-					safeVarToUnivVarMap.putIfAbsent(safeArgument,
-							Expressions.makeUniversalVariable(variablePref + Integer.toString(++freshVarCounter)));
+					safeVarToUnivVarMap.putIfAbsent(safeArgument, TermDictionary.variable(++freshVarCounter));
 
 		ArrayList<PositiveLiteral> headAtoms = new ArrayList<PositiveLiteral>();
 		for (SWRLAtom safeHeadAtom : swrlHeadAtoms)
 			headAtoms.add(swrlAtomToPositiveLiteral(safeHeadAtom, safeVarToUnivVarMap));
-		Conjunction<PositiveLiteral> head = Expressions.makePositiveConjunction(headAtoms);
 
 		ArrayList<PositiveLiteral> bodyAtoms = new ArrayList<PositiveLiteral>();
-		for (SWRLAtom safeBodyAtom : swrlBodyAtoms)
-			bodyAtoms.add(swrlAtomToPositiveLiteral(safeBodyAtom, safeVarToUnivVarMap));
-		for (UniversalVariable variable : safeVarToUnivVarMap.values())
-			bodyAtoms.add(Expressions.makePositiveLiteral(SpecialPreds.namedPredName, variable));
-		Conjunction<PositiveLiteral> body = Expressions.makePositiveConjunction(bodyAtoms);
+		for (SWRLAtom safeBodyAtom : swrlBodyAtoms) {
+			PositiveLiteral bodyAtom = swrlAtomToPositiveLiteral(safeBodyAtom, safeVarToUnivVarMap);
+			thingInBodies |= bodyAtom.getPredicate().getName().equals(SpecialPreds.owlThingPredName);
+			bodyAtoms.add(bodyAtom);
+		}
 
-		rules.add(Expressions.makePositiveLiteralsRule(head, body));
+		swrlRuleCompiler.addRule(headAtoms, bodyAtoms, currentAxiom);
 	}
 
 	public PositiveLiteral swrlAtomToPositiveLiteral(SWRLAtom safeBodyAtom,
@@ -329,9 +587,9 @@ public class OWLToRulesConverter {
 			if (arg instanceof SWRLVariable)
 				terms.add(safeVarToXVarMap.get(arg));
 			else if (arg instanceof SWRLIndividualArgument)
-				terms.add(Expressions.makeAbstractConstant(((SWRLIndividualArgument) arg).getIndividual().toString()));
+				terms.add(dictionary.constant(((SWRLIndividualArgument) arg).getIndividual()));
 
-		return Expressions.makePositiveLiteral(safeBodyAtom.getPredicate().toString(), terms);
+		return Expressions.makePositiveLiteral(dictionary.predicate(safeBodyAtom.getPredicate(), terms.size()), terms);
 	}
 
 	private Conjunction<PositiveLiteral> conceptExpToPosConjunction(OWLClassExpression conceptExp, Term term,
@@ -339,7 +597,7 @@ public class OWLToRulesConverter {
 		return Expressions.makeConjunction(conceptExpToAtoms(conceptExp, term, buildingHead));
 	}
 
-	private List<PositiveLiteral> conceptExpToAtoms(OWLClassExpression conceptExp, Term term, boolean buildingHead) {
+	List<PositiveLiteral> conceptExpToAtoms(OWLClassExpression conceptExp, Term term, boolean buildingHead) {
 
 		ArrayList<PositiveLiteral> literals = new ArrayList<PositiveLiteral>();
 
@@ -348,7 +606,7 @@ public class OWLToRulesConverter {
 		case "ObjectIntersectionOf":
 			// C1 scap ... sqcap Cn
 			OWLObjectIntersectionOf intConceptExp = (OWLObjectIntersectionOf) conceptExp;
-			for (OWLClassExpression conjunctConceptExp : intConceptExp.asConjunctSet())
+			for (OWLClassExpression conjunctConceptExp : sorted(intConceptExp.asConjunctSet()))
 				literals.addAll(conceptExpToAtoms(conjunctConceptExp, term, buildingHead));
 			break;
 
@@ -370,16 +628,17 @@ public class OWLToRulesConverter {
 		case "ObjectSomeValuesFrom":
 			// exists R.C
 			OWLObjectSomeValuesFrom existConceptExp = (OWLObjectSomeValuesFrom) conceptExp;
-			OWLClassExpression filler = existConceptExp.getFiller();
-			Term freshTerm;
 			if (buildingHead) {
-				freshTerm = Expressions.makeAbstractConstant(constantPref + ++freshConstCounter);
-				if (!filler.isOWLThing())
-					literals.add(Expressions.makePositiveLiteral(SpecialPreds.owlThingPredName, freshTerm));
-			} else
-				freshTerm = Expressions.makeUniversalVariable(variablePref + ++freshVarCounter);
-			literals.add(Expressions.makePositiveLiteral(existConceptExp.getProperty().toString(), term, freshTerm));
-			literals.addAll(conceptExpToAtoms(filler, freshTerm, buildingHead));
+				literals.add(Expressions.makePositiveLiteral(dictionary.predicate(existConceptExp.getProperty(), 2),
+						term, witness(existConceptExp)));
+				break;
+			}
+			// Every individual is an instance of owl:Thing, so R some owl:Thing only needs the role atom
+			Term freshTerm = TermDictionary.variable(++freshVarCounter);
+			literals.add(Expressions.makePositiveLiteral(dictionary.predicate(existConceptExp.getProperty(), 2), term,
+					freshTerm));
+			if (!existConceptExp.getFiller().isOWLThing())
+				literals.addAll(conceptExpToAtoms(existConceptExp.getFiller(), freshTerm, buildingHead));
 			break;
 
 		case "ObjectOneOf":
@@ -389,29 +648,31 @@ public class OWLToRulesConverter {
 				System.out.println("WARNING!!! Illegal OWLObjectOneOf expression at StoreInitializer.java." + "\n"
 						+ " > " + nominalConceptExpression + "\n");
 			}
-			AbstractConstant nominalConstant = Expressions.makeAbstractConstant(
-					nominalConceptExpression.individuals().collect(Collectors.toSet()).iterator().next().toString());
-			literals.add(Expressions.makePositiveLiteral(SpecialPreds.owlSameAsPredName, term, nominalConstant));
+			OWLIndividual nominal = nominalConceptExpression.individuals().sorted().findFirst().get();
+			AbstractConstant nominalConstant = dictionary.constant(nominal);
+			literals.add(Expressions.makePositiveLiteral(dictionary.specialPredicate(SpecialPreds.owlSameAsPredName, 2),
+					term, nominalConstant));
 			break;
 
 		case "ObjectHasSelf":
 			// exists R.Self
 			containsSelf = true;
 			OWLObjectHasSelf selfConceptExp = (OWLObjectHasSelf) conceptExp;
-			String roleSelfConcept = roleToRoleSelfConcept((OWLObjectProperty) selfConceptExp.getProperty());
+			Predicate roleSelfConcept = dictionary.selfPredicate((OWLObjectProperty) selfConceptExp.getProperty());
 			literals.add(Expressions.makePositiveLiteral(roleSelfConcept, term));
 			break;
 
 		case "ObjectHasValue":
 			// exists R.{a}
 			OWLObjectHasValue hasValueExp = (OWLObjectHasValue) conceptExp;
-			AbstractConstant valueConstant = Expressions.makeAbstractConstant(hasValueExp.getFiller().toString());
-			literals.add(Expressions.makePositiveLiteral(hasValueExp.getProperty().toString(), term, valueConstant));
+			AbstractConstant valueConstant = dictionary.constant(hasValueExp.getFiller());
+			literals.add(Expressions.makePositiveLiteral(dictionary.predicate(hasValueExp.getProperty(), 2), term,
+					valueConstant));
 			break;
 
 		case "Class":
 			// A
-			literals.add(Expressions.makePositiveLiteral(conceptExp.toString(), term));
+			literals.add(Expressions.makePositiveLiteral(dictionary.predicate(conceptExp, 1), term));
 			break;
 
 		default:
@@ -423,8 +684,8 @@ public class OWLToRulesConverter {
 		return literals;
 	}
 
-	private String roleToRoleSelfConcept(OWLObjectProperty role) {
-		return role.toString().substring(0, role.toString().length() - 1) + "Self>";
+	private Predicate namedIndividualPredicate() {
+		return dictionary.specialPredicate(SpecialPreds.namedPredName, 1);
 	}
 
 }
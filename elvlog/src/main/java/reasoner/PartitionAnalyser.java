@@ -0,0 +1,131 @@
+package reasoner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.Constant;
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.api.UniversalVariable;
+
+// Decides whether the ABox can be split into partitions that share no individual and be materialised one
+// partition at a time. This is the case if every rule only joins facts about the same individuals: the atoms
+// of a body are connected by their variables, and no variable joining two atoms can only be bound to a
+// constant of the rule heads (a fresh constant or a nominal), the only terms all partitions share. The ABox
+// must not mention these constants, since facts about them would otherwise be in a single partition. Facts
+// made only of these constants may be derived by several partitions, and are merged afterwards.
+public class PartitionAnalyser {
+
+	private Rule unsafeRule;
+
+	public boolean isSafe(Collection<Rule> rules) {
+		Set<String> constantPositions = constantPositions(rules);
+		for (Rule rule : rules)
+			if (!isSafe(rule, constantPositions)) {
+				unsafeRule = rule;
+				return false;
+			}
+		return true;
+	}
+
+	// The first rule found to join facts of different partitions
+	public Rule getUnsafeRule() {
+		return unsafeRule;
+	}
+
+	// Names of the constants in rule heads, the terms shared by all partitions
+	public static Set<String> headConstants(Collection<Rule> rules) {
+		Set<String> constants = new LinkedHashSet<String>();
+		for (Rule rule : rules)
+			for (Literal atom : rule.getHead().getLiterals())
+				for (Term term : atom.getTerms())
+					if (term instanceof Constant)
+						constants.add(term.getName());
+		return constants;
+	}
+
+	private static boolean isSafe(Rule rule, Set<String> constantPositions) {
+		// Equal individuals of different partitions would have to be merged
+		for (PositiveLiteral headAtom : rule.getHead().getLiterals())
+			if (headAtom.getPredicate().getName().equals(SpecialPreds.owlSameAsPredName))
+				for (int i = 0; i < headAtom.getTerms().size(); i++)
+					if (constantPositions.contains(position(headAtom, i)))
+						return false;
+
+		List<Literal> body = rule.getBody().getLiterals();
+		if (body.size() < 2)
+			return true;
+
+		// Variables occurring in several atoms, and whether some occurrence cannot hold a constant
+		Map<Term, Set<Integer>> atomsByVariable = new HashMap<Term, Set<Integer>>();
+		Map<Term, Boolean> individualVariables = new HashMap<Term, Boolean>();
+		for (int atomIndex = 0; atomIndex < body.size(); atomIndex++) {
+			Literal atom = body.get(atomIndex);
+			for (int i = 0; i < atom.getTerms().size(); i++) {
+				Term term = atom.getTerms().get(i);
+				if (!(term instanceof UniversalVariable))
+					continue;
+				atomsByVariable.computeIfAbsent(term, v -> new HashSet<Integer>()).add(atomIndex);
+				individualVariables.merge(term, !constantPositions.contains(position(atom, i)), Boolean::logicalOr);
+			}
+		}
+		for (Map.Entry<Term, Set<Integer>> atoms : atomsByVariable.entrySet())
+			if (atoms.getValue().size() > 1 && !individualVariables.get(atoms.getKey()))
+				return false;
+
+		// Atoms connected through their variables, starting from the first one
+		Set<Integer> connectedAtoms = new HashSet<Integer>();
+		List<Integer> pendingAtoms = new ArrayList<Integer>();
+		connectedAtoms.add(0);
+		pendingAtoms.add(0);
+		while (!pendingAtoms.isEmpty()) {
+			Literal atom = body.get(pendingAtoms.remove(pendingAtoms.size() - 1));
+			for (Term term : atom.getTerms())
+				for (int atomIndex : atomsByVariable.getOrDefault(term, new HashSet<Integer>()))
+					if (connectedAtoms.add(atomIndex))
+						pendingAtoms.add(atomIndex);
+		}
+		return connectedAtoms.size() == body.size();
+	}
+
+	// Predicate positions that may hold a constant of the rules, propagated from the heads through the rules
+	private static Set<String> constantPositions(Collection<Rule> rules) {
+		Set<String> constantPositions = new HashSet<String>();
+		Map<String, Set<String>> positionSuccessors = new HashMap<String, Set<String>>();
+		for (Rule rule : rules)
+			for (PositiveLiteral headAtom : rule.getHead().getLiterals())
+				for (int i = 0; i < headAtom.getTerms().size(); i++) {
+					Term headTerm = headAtom.getTerms().get(i);
+					if (headTerm instanceof Constant)
+						constantPositions.add(position(headAtom, i));
+					else
+						for (Literal bodyAtom : rule.getBody().getLiterals())
+							for (int j = 0; j < bodyAtom.getTerms().size(); j++)
+								if (bodyAtom.getTerms().get(j).equals(headTerm))
+									positionSuccessors.computeIfAbsent(position(bodyAtom, j),
+											p -> new HashSet<String>()).add(position(headAtom, i));
+				}
+
+		List<String> pendingPositions = new ArrayList<String>(constantPositions);
+		while (!pendingPositions.isEmpty()) {
+			String position = pendingPositions.remove(pendingPositions.size() - 1);
+			for (String successor : positionSuccessors.getOrDefault(position, new HashSet<String>()))
+				if (constantPositions.add(successor))
+					pendingPositions.add(successor);
+		}
+		return constantPositions;
+	}
+
+	private static String position(Literal atom, int index) {
+		return atom.getPredicate().getName() + "\t" + atom.getPredicate().getArity() + "\t" + index;
+	}
+
+}
@@ -0,0 +1,65 @@
+package reasoner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+
+// Restricts a rule set to the rules that can contribute to a set of goal predicates: a predicate is relevant
+// if it is a goal or occurs in the body of a rule with a relevant head predicate, and a rule is kept if one of
+// its head predicates is relevant. This is the magic sets rewriting for goals without bound arguments; only the
+// relevant predicates need to be loaded from the ABox.
+public class RelevanceAnalyser {
+
+	private Set<Predicate> relevantPredicates = new LinkedHashSet<Predicate>();
+	private int prunedRules = 0;
+
+	public List<Rule> prune(Collection<Rule> rules, Set<Predicate> goals) {
+		Map<Predicate, List<Rule>> rulesByHeadPredicate = new HashMap<Predicate, List<Rule>>();
+		for (Rule rule : rules)
+			for (Literal headAtom : rule.getHead().getLiterals())
+				rulesByHeadPredicate.computeIfAbsent(headAtom.getPredicate(), p -> new ArrayList<Rule>()).add(rule);
+
+		// Backward reachability from the goals
+		Set<Rule> relevantRules = new LinkedHashSet<Rule>();
+		List<Predicate> pendingPredicates = new ArrayList<Predicate>(goals);
+		relevantPredicates.addAll(goals);
+		while (!pendingPredicates.isEmpty()) {
+			Predicate predicate = pendingPredicates.remove(pendingPredicates.size() - 1);
+			for (Rule rule : rulesByHeadPredicate.getOrDefault(predicate, new ArrayList<Rule>()))
+				if (relevantRules.add(rule))
+					for (Literal bodyAtom : rule.getBody().getLiterals())
+						if (relevantPredicates.add(bodyAtom.getPredicate()))
+							pendingPredicates.add(bodyAtom.getPredicate());
+		}
+
+		// Keeping the order of the original rule set
+		List<Rule> prunedRuleSet = new ArrayList<Rule>();
+		for (Rule rule : rules)
+			if (relevantRules.contains(rule))
+				prunedRuleSet.add(rule);
+		prunedRules = rules.size() - prunedRuleSet.size();
+		return prunedRuleSet;
+	}
+
+	public Set<Predicate> getRelevantPredicates() {
+		return relevantPredicates;
+	}
+
+	public int getPrunedRuleCount() {
+		return prunedRules;
+	}
+
+	public void printReport() {
+		System.out.println(" - Relevant predicates: " + relevantPredicates.size());
+		System.out.println(" - Irrelevant rules removed: " + prunedRules);
+	}
+
+}
@@ -0,0 +1,114 @@
+package reasoner;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEquivalentObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubPropertyChainOfAxiom;
+import org.semanticweb.owlapi.model.OWLTransitiveObjectPropertyAxiom;
+
+// Role hierarchy of an ontology, computed ahead of the conversion. The reflexive-transitive closure of the
+// SubObjectPropertyOf and EquivalentObjectProperties axioms is emitted as one rule per entailed inclusion,
+// so that VLog does not need to iterate over the hierarchy, and transitive roles (Tran(R) or R o R sqsubseteq
+// R) are materialised with linear rules over a base relation instead of the R o R sqsubseteq R self-join.
+public class RoleHierarchy {
+
+	private Map<OWLObjectProperty, Set<OWLObjectProperty>> directSuperRoles =
+			new HashMap<OWLObjectProperty, Set<OWLObjectProperty>>();
+	private Map<OWLObjectProperty, Set<OWLObjectProperty>> superRoles =
+			new HashMap<OWLObjectProperty, Set<OWLObjectProperty>>();
+	private Set<OWLObjectProperty> transitiveRoles = new HashSet<OWLObjectProperty>();
+
+	// Only the axioms kept by the filter are used; checking them here does not report ignored axioms, which is
+	// left to the conversion
+	public RoleHierarchy(OWLOntology ontology) {
+		Stream.of(AxiomType.SUB_OBJECT_PROPERTY, AxiomType.EQUIVALENT_OBJECT_PROPERTIES,
+				AxiomType.TRANSITIVE_OBJECT_PROPERTY, AxiomType.SUB_PROPERTY_CHAIN_OF)
+				.flatMap(axiomType -> ontology.axioms(axiomType)).filter(Filter::isRelevantAxiom)
+				.forEach(this::addAxiom);
+
+		for (OWLObjectProperty role : directSuperRoles.keySet())
+			superRoles.put(role, computeSuperRoles(role));
+	}
+
+	private void addAxiom(OWLAxiom axiom) {
+		switch (axiom.getAxiomType().toString()) {
+		case "SubObjectPropertyOf":
+			addSubRole((OWLSubObjectPropertyOfAxiom) axiom);
+			break;
+
+		case "EquivalentObjectProperties":
+			for (OWLSubObjectPropertyOfAxiom subRoleAxiom : ((OWLEquivalentObjectPropertiesAxiom) axiom)
+					.asSubObjectPropertyOfAxioms())
+				addSubRole(subRoleAxiom);
+			break;
+
+		case "TransitiveObjectProperty":
+			OWLObjectPropertyExpression transitiveRole = ((OWLTransitiveObjectPropertyAxiom) axiom).getProperty();
+			if (transitiveRole.isNamed())
+				transitiveRoles.add(transitiveRole.asOWLObjectProperty());
+			break;
+
+		case "SubPropertyChainOf":
+			if (isTransitivityAxiom((OWLSubPropertyChainOfAxiom) axiom))
+				transitiveRoles.add(((OWLSubPropertyChainOfAxiom) axiom).getSuperProperty().asOWLObjectProperty());
+			break;
+		}
+	}
+
+	// Roles with at least one super role other than themselves
+	public Set<OWLObjectProperty> getSubRoles() {
+		return superRoles.keySet();
+	}
+
+	public Set<OWLObjectProperty> getSuperRoles(OWLObjectProperty role) {
+		return superRoles.getOrDefault(role, Collections.emptySet());
+	}
+
+	public Set<OWLObjectProperty> getTransitiveRoles() {
+		return transitiveRoles;
+	}
+
+	// R o R sqsubseteq R
+	public static boolean isTransitivityAxiom(OWLSubPropertyChainOfAxiom chainOfAxiom) {
+		List<OWLObjectPropertyExpression> chain = chainOfAxiom.getPropertyChain();
+		return chain.size() == 2 && chainOfAxiom.getSuperProperty().isNamed()
+				&& chain.get(0).equals(chainOfAxiom.getSuperProperty())
+				&& chain.get(1).equals(chainOfAxiom.getSuperProperty());
+	}
+
+	private void addSubRole(OWLSubObjectPropertyOfAxiom subRoleAxiom) {
+		if (subRoleAxiom.getSubProperty().isNamed() && subRoleAxiom.getSuperProperty().isNamed())
+			directSuperRoles
+					.computeIfAbsent(subRoleAxiom.getSubProperty().asOWLObjectProperty(),
+							role -> new HashSet<OWLObjectProperty>())
+					.add(subRoleAxiom.getSuperProperty().asOWLObjectProperty());
+	}
+
+	private Set<OWLObjectProperty> computeSuperRoles(OWLObjectProperty role) {
+		Set<OWLObjectProperty> reachedRoles = new HashSet<OWLObjectProperty>();
+		Deque<OWLObjectProperty> pendingRoles = new ArrayDeque<OWLObjectProperty>();
+		pendingRoles.push(role);
+		while (!pendingRoles.isEmpty())
+			for (OWLObjectProperty superRole : directSuperRoles.getOrDefault(pendingRoles.pop(),
+					Collections.emptySet()))
+				if (reachedRoles.add(superRole))
+					pendingRoles.push(superRole);
+		reachedRoles.remove(role);
+		return reachedRoles;
+	}
+
+}
@@ -0,0 +1,79 @@
+package reasoner;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+
+// Index of the rules of a conversion and the axioms they were obtained from, written as tab separated values:
+// the source of the rule (an axiom type or a closure such as ClassHierarchy), the axiom without annotations
+// ("-" for closures) and the rule. A rule obtained from several axioms is listed once for each. The sources
+// of the rules deriving each predicate are also kept in memory, since later rewritings of the rule set keep
+// the predicates but not the rules.
+public class RuleProvenance implements Closeable {
+
+	private Writer writer;
+	private Map<Predicate, Set<String>> sourcesByHeadPredicate = new HashMap<Predicate, Set<String>>();
+	private Map<Rule, Set<String>> sourcesByRule = new HashMap<Rule, Set<String>>();
+
+	// Only kept in memory
+	public RuleProvenance() {
+	}
+
+	public RuleProvenance(File provenanceFile) throws IOException {
+		writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(provenanceFile), StandardCharsets.UTF_8));
+		writer.write("source\taxiom\trule\n");
+	}
+
+	public void record(String source, String axiom, Rule rule) {
+		String ruleSource = axiom == null ? source : singleLine(axiom);
+		for (Literal headAtom : rule.getHead().getLiterals())
+			sourcesByHeadPredicate.computeIfAbsent(headAtom.getPredicate(), p -> new LinkedHashSet<String>())
+					.add(ruleSource);
+		sourcesByRule.computeIfAbsent(rule, r -> new LinkedHashSet<String>()).add(ruleSource);
+		if (writer == null)
+			return;
+
+		try {
+			writer.write(source + "\t" + (axiom == null ? "-" : singleLine(axiom)) + "\t" + singleLine(rule.toString())
+					+ "\n");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Axioms, or closures, of the rules with the predicate in their head
+	public Set<String> getSources(Predicate predicate) {
+		return sourcesByHeadPredicate.getOrDefault(predicate, new LinkedHashSet<String>());
+	}
+
+	// Axioms, or closures, the rule was obtained from
+	public Set<String> getSources(Rule rule) {
+		return sourcesByRule.getOrDefault(rule, new LinkedHashSet<String>());
+	}
+
+	private static String singleLine(String value) {
+		return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (writer != null)
+			writer.close();
+	}
+
+}
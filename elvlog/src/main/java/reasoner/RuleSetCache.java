@@ -0,0 +1,320 @@
+package reasoner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import org.semanticweb.vlog4j.core.model.api.AbstractConstant;
+import org.semanticweb.vlog4j.core.model.api.ExistentialVariable;
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.api.UniversalVariable;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+// Rules and predicates of an ontology, stored under the SHA-256 hash of the axioms of its import closure and
+// the version of the conversion.
+// Records are rules, predicates or the end mark; strings are written once and then referred to by index.
+// So that cached rules can be found without parsing the ontology, a document index stored under the hash of
+// the ontology file lists the hash of every document of the import closure and the rules they gave; it is only
+// written when all these documents are local files, and is used while none of them has changed.
+public class RuleSetCache {
+
+	private static int formatVersion = 7;
+	private static String cacheFileSuffix = ".rules";
+	private static String documentIndexSuffix = ".documents";
+
+	private static byte endTag = 0;
+	private static byte ruleTag = 1;
+	private static byte predicateTag = 2;
+
+	private static byte universalVariableTag = 0;
+	private static byte existentialVariableTag = 1;
+	private static byte constantTag = 2;
+
+	private File cacheDirectory;
+
+	public RuleSetCache(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public Set<Predicate> load(File cacheFile, Consumer<Rule> ruleConsumer) throws IOException {
+		Set<Predicate> predicates = new LinkedHashSet<Predicate>();
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (input.readInt() != formatVersion)
+				throw new IOException("Unsupported rule cache format in " + cacheFile);
+
+			List<String> strings = new ArrayList<String>();
+			byte tag;
+			while ((tag = input.readByte()) != endTag) {
+				if (tag == ruleTag) {
+					List<PositiveLiteral> head = readLiterals(input, strings);
+					List<PositiveLiteral> body = readLiterals(input, strings);
+					ruleConsumer.accept(Expressions.makePositiveLiteralsRule(Expressions.makePositiveConjunction(head),
+							Expressions.makePositiveConjunction(body)));
+				} else if (tag == predicateTag)
+					predicates.add(readPredicate(input, strings));
+				else
+					throw new IOException("Corrupted rule cache file " + cacheFile);
+			}
+		}
+		return predicates;
+	}
+
+	public void store(File cacheFile, Set<Rule> rules, Set<Predicate> predicates) throws IOException {
+		try (Writer writer = writer(cacheFile)) {
+			for (Rule rule : rules)
+				writer.accept(rule);
+			writer.commit(predicates);
+		}
+	}
+
+	public Writer writer(File cacheFile) throws IOException {
+		return new Writer(cacheFile);
+	}
+
+	public File cacheFile(OWLOntology ontology) {
+		MessageDigest digest = versionDigest();
+
+		// Axioms are sorted so that the key does not depend on the order they were parsed in, or on which
+		// document of the closure they come from
+		List<String> axioms = ontology.importsClosure().flatMap(o -> o.axioms()).map(axiom -> axiom.toString())
+				.sorted().distinct().collect(Collectors.toList());
+		for (String axiom : axioms)
+			digest.update((axiom + "\n").getBytes(StandardCharsets.UTF_8));
+		return new File(cacheDirectory, hex(digest) + cacheFileSuffix);
+	}
+
+	// Cache file of the rules of the ontology file if its documents have not changed, or null if the ontology
+	// has to be loaded to find it
+	public File cacheFile(File ontologyFile) throws IOException {
+		File documentIndex = documentIndex(ontologyFile);
+		if (!documentIndex.isFile())
+			return null;
+
+		List<String> lines = Files.readAllLines(documentIndex.toPath(), StandardCharsets.UTF_8);
+		for (String line : lines.subList(1, lines.size())) {
+			String[] document = line.split("\t", 2);
+			File documentFile = new File(document[1]);
+			if (!documentFile.isFile() || !fileHash(documentFile).equals(document[0]))
+				return null;
+		}
+		File cacheFile = new File(cacheDirectory, lines.get(0));
+		return cacheFile.isFile() ? cacheFile : null;
+	}
+
+	// Records the documents the loaded ontology was read from, unless some of them are not local files
+	public void recordDocuments(File ontologyFile, OWLOntology ontology, File cacheFile) throws IOException {
+		StringBuilder documentIndex = new StringBuilder(cacheFile.getName() + "\n");
+		for (OWLOntology document : ontology.importsClosure().collect(Collectors.toList())) {
+			IRI documentIRI = ontology.getOWLOntologyManager().getOntologyDocumentIRI(document);
+			if (!"file".equals(documentIRI.getScheme()))
+				return;
+			File documentFile = new File(documentIRI.toURI());
+			documentIndex.append(fileHash(documentFile) + "\t" + documentFile.getAbsolutePath() + "\n");
+		}
+
+		cacheDirectory.mkdirs();
+		File indexFile = documentIndex(ontologyFile);
+		File temporaryFile = File.createTempFile(indexFile.getName(), ".tmp", cacheDirectory);
+		try {
+			Files.write(temporaryFile.toPath(), documentIndex.toString().getBytes(StandardCharsets.UTF_8));
+			Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryFile.toPath());
+		}
+	}
+
+	private File documentIndex(File ontologyFile) throws IOException {
+		MessageDigest digest = versionDigest();
+		digest.update(fileHash(ontologyFile).getBytes(StandardCharsets.UTF_8));
+		return new File(cacheDirectory, hex(digest) + documentIndexSuffix);
+	}
+
+	private static MessageDigest versionDigest() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		String versions = formatVersion + "\t" + OWLToRulesConverter.rulesVersion + "\n";
+		digest.update(versions.getBytes(StandardCharsets.UTF_8));
+		return digest;
+	}
+
+	private static String fileHash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream input = new FileInputStream(file)) {
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				digest.update(buffer, 0, read);
+		}
+		return hex(digest);
+	}
+
+	private static String hex(MessageDigest digest) {
+		StringBuilder hash = new StringBuilder();
+		for (byte hashByte : digest.digest())
+			hash.append(String.format("%02x", hashByte));
+		return hash.toString();
+	}
+
+	private static void writeLiterals(DataOutputStream output, List<? extends Literal> literals,
+			Map<String, Integer> strings) throws IOException {
+		output.writeInt(literals.size());
+		for (Literal literal : literals) {
+			if (literal.isNegated())
+				throw new IllegalArgumentException("Negated literals can not be cached: " + literal);
+			writePredicate(output, literal.getPredicate(), strings);
+			for (Term term : literal.getTerms()) {
+				if (term instanceof UniversalVariable)
+					output.writeByte(universalVariableTag);
+				else if (term instanceof ExistentialVariable)
+					output.writeByte(existentialVariableTag);
+				else if (term instanceof AbstractConstant)
+					output.writeByte(constantTag);
+				else
+					throw new IllegalArgumentException("Unsupported term in cached rule: " + term);
+				writeString(output, term.getName(), strings);
+			}
+		}
+	}
+
+	private static List<PositiveLiteral> readLiterals(DataInputStream input, List<String> strings)
+			throws IOException {
+		int literalCount = input.readInt();
+		List<PositiveLiteral> literals = new ArrayList<PositiveLiteral>(literalCount);
+		for (int i = 0; i < literalCount; i++) {
+			Predicate predicate = readPredicate(input, strings);
+			List<Term> terms = new ArrayList<Term>(predicate.getArity());
+			for (int j = 0; j < predicate.getArity(); j++) {
+				byte termTag = input.readByte();
+				String name = readString(input, strings);
+				if (termTag == universalVariableTag)
+					terms.add(Expressions.makeUniversalVariable(name));
+				else if (termTag == existentialVariableTag)
+					terms.add(Expressions.makeExistentialVariable(name));
+				else
+					terms.add(Expressions.makeAbstractConstant(name));
+			}
+			literals.add(Expressions.makePositiveLiteral(predicate, terms));
+		}
+		return literals;
+	}
+
+	private static void writePredicate(DataOutputStream output, Predicate predicate, Map<String, Integer> strings)
+			throws IOException {
+		writeString(output, predicate.getName(), strings);
+		output.writeByte(predicate.getArity());
+	}
+
+	private static Predicate readPredicate(DataInputStream input, List<String> strings) throws IOException {
+		String name = readString(input, strings);
+		return Expressions.makePredicate(name, input.readByte());
+	}
+
+	// New strings are written as -1 followed by the string, known strings as their index
+	private static void writeString(DataOutputStream output, String string, Map<String, Integer> strings)
+			throws IOException {
+		Integer index = strings.get(string);
+		if (index != null)
+			output.writeInt(index);
+		else {
+			strings.put(string, strings.size());
+			output.writeInt(-1);
+			output.writeUTF(string);
+		}
+	}
+
+	// Writes rules as they are produced; the cache file only appears once the predicates are committed
+	public class Writer implements Consumer<Rule>, Closeable {
+
+		private File cacheFile;
+		private File temporaryFile;
+		private DataOutputStream output;
+		private Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		public Writer(File cacheFile) throws IOException {
+			this.cacheFile = cacheFile;
+			cacheDirectory.mkdirs();
+
+			// Written to a temporary file first so that concurrent runs never read a partial cache
+			temporaryFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheDirectory);
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+			output.writeInt(formatVersion);
+		}
+
+		@Override
+		public void accept(Rule rule) {
+			try {
+				output.writeByte(ruleTag);
+				writeLiterals(output, rule.getHead().getLiterals(), strings);
+				writeLiterals(output, rule.getBody().getLiterals(), strings);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public void commit(Set<Predicate> predicates) throws IOException {
+			for (Predicate predicate : predicates) {
+				output.writeByte(predicateTag);
+				writePredicate(output, predicate, strings);
+			}
+			output.writeByte(endTag);
+			output.close();
+			Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			output.close();
+			Files.deleteIfExists(temporaryFile.toPath());
+		}
+	}
+
+	private static String readString(DataInputStream input, List<String> strings) throws IOException {
+		int index = input.readInt();
+		if (index != -1)
+			return strings.get(index);
+		String string = input.readUTF();
+		strings.add(string);
+		return string;
+	}
+
+}
@@ -0,0 +1,136 @@
+package reasoner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.ExistentialVariable;
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.api.UniversalVariable;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+// Simplifies a rule set before it is handed over to VLog: rules with several head atoms are split,
+// variables are renamed by order of occurrence, and duplicate, tautological and unreachable rules
+// (with a body predicate that neither the data nor any other rule can populate) are removed.
+public class RuleSetOptimiser {
+
+	private static String variablePref = "V";
+
+	private int splitRules = 0;
+	private int duplicateRules = 0;
+	private int tautologicalRules = 0;
+	private int unreachableRules = 0;
+
+	public Set<Rule> optimise(Collection<Rule> rules, Set<Predicate> dataPredicates) {
+
+		// Splitting heads and normalising variables
+		Set<Rule> normalisedRules = new LinkedHashSet<Rule>();
+		int normalisedRuleCount = 0;
+		for (Rule rule : rules)
+			for (Rule splitRule : splitHead(rule)) {
+				normalisedRuleCount++;
+				Rule normalisedRule = normaliseVariables(splitRule);
+				if (isTautological(normalisedRule))
+					tautologicalRules++;
+				else
+					normalisedRules.add(normalisedRule);
+			}
+		splitRules = normalisedRuleCount - rules.size();
+		duplicateRules = normalisedRuleCount - tautologicalRules - normalisedRules.size();
+
+		// Computing the predicates that can be populated
+		Set<Predicate> populatedPredicates = new HashSet<Predicate>(dataPredicates);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Rule rule : normalisedRules)
+				if (hasPopulatedBody(rule, populatedPredicates))
+					for (Literal headAtom : rule.getHead().getLiterals())
+						changed |= populatedPredicates.add(headAtom.getPredicate());
+		}
+
+		Set<Rule> optimisedRules = new LinkedHashSet<Rule>();
+		for (Rule rule : normalisedRules)
+			if (hasPopulatedBody(rule, populatedPredicates))
+				optimisedRules.add(rule);
+			else
+				unreachableRules++;
+		return optimisedRules;
+	}
+
+	public int getRemovedRuleCount() {
+		return duplicateRules + tautologicalRules + unreachableRules;
+	}
+
+	public void printReport() {
+		System.out.println(" - Rules split from conjunctive heads: " + splitRules);
+		System.out.println(" - Duplicate rules removed: " + duplicateRules);
+		System.out.println(" - Tautological rules removed: " + tautologicalRules);
+		System.out.println(" - Unreachable rules removed: " + unreachableRules);
+	}
+
+	// Without existential variables every head atom can be derived on its own
+	private static List<Rule> splitHead(Rule rule) {
+		List<PositiveLiteral> headAtoms = rule.getHead().getLiterals();
+		List<Rule> splitRules = new ArrayList<Rule>();
+		if (headAtoms.size() < 2 || hasExistentialVariables(headAtoms)) {
+			splitRules.add(rule);
+			return splitRules;
+		}
+		for (PositiveLiteral headAtom : headAtoms)
+			splitRules.add(Expressions.makeRule(Expressions.makePositiveConjunction(headAtom), rule.getBody()));
+		return splitRules;
+	}
+
+	private static boolean hasExistentialVariables(List<PositiveLiteral> atoms) {
+		for (PositiveLiteral atom : atoms)
+			for (Term term : atom.getTerms())
+				if (term instanceof ExistentialVariable)
+					return true;
+		return false;
+	}
+
+	// Universal variables are renamed V0, V1, ... in order of occurrence in the body and then the head
+	private static Rule normaliseVariables(Rule rule) {
+		Map<Term, Term> renaming = new LinkedHashMap<Term, Term>();
+		List<Literal> body = new ArrayList<Literal>();
+		for (Literal bodyAtom : rule.getBody().getLiterals())
+			body.add(rename(bodyAtom, renaming));
+		List<PositiveLiteral> head = new ArrayList<PositiveLiteral>();
+		for (PositiveLiteral headAtom : rule.getHead().getLiterals())
+			head.add(rename(headAtom, renaming));
+		return Expressions.makeRule(Expressions.makePositiveConjunction(head), Expressions.makeConjunction(body));
+	}
+
+	private static PositiveLiteral rename(Literal atom, Map<Term, Term> renaming) {
+		List<Term> terms = new ArrayList<Term>();
+		for (Term term : atom.getTerms())
+			if (term instanceof UniversalVariable)
+				terms.add(renaming.computeIfAbsent(term,
+						variable -> Expressions.makeUniversalVariable(variablePref + renaming.size())));
+			else
+				terms.add(term);
+		return Expressions.makePositiveLiteral(atom.getPredicate(), terms);
+	}
+
+	private static boolean isTautological(Rule rule) {
+		return rule.getBody().getLiterals().containsAll(rule.getHead().getLiterals());
+	}
+
+	private static boolean hasPopulatedBody(Rule rule, Set<Predicate> populatedPredicates) {
+		for (Literal bodyAtom : rule.getBody().getLiterals())
+			if (!populatedPredicates.contains(bodyAtom.getPredicate()))
+				return false;
+		return true;
+	}
+
+}
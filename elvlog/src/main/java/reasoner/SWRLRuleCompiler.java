@@ -0,0 +1,254 @@
+package reasoner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.ExistentialVariable;
+import org.semanticweb.vlog4j.core.model.api.Literal;
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Rule;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.api.UniversalVariable;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+// Compiles the DL-safe rules of an ontology once every other rule is known:
+// - body atoms are ordered greedily, atoms with most constants and bound variables and fewest unbound ones first;
+// - a variable only needs the named individual guard if none of its occurrences is in a predicate position
+// that can never hold an anonymous individual, and the guard is placed right after the atom binding it;
+// - first joins shared by several rules are computed once into auxiliary predicates, repeatedly, so that rules
+// with a common prefix share the whole prefix.
+public class SWRLRuleCompiler {
+
+	private Predicate namedPredicate;
+
+	// Predicate positions that may hold anonymous individuals and their propagation through the other rules
+	private Set<String> anonymousPositions = new HashSet<String>();
+	private Map<String, Set<String>> positionSuccessors = new HashMap<String, Set<String>>();
+
+	private List<List<PositiveLiteral>> ruleBodies = new ArrayList<List<PositiveLiteral>>();
+	private List<List<PositiveLiteral>> ruleHeads = new ArrayList<List<PositiveLiteral>>();
+	private List<String> ruleSources = new ArrayList<String>();
+	private int joinPredicateCounter = 0;
+	private int droppedGuards = 0;
+
+	public SWRLRuleCompiler(Predicate namedPredicate) {
+		this.namedPredicate = namedPredicate;
+	}
+
+	// Every rule but the DL-safe ones has to be observed before compiling
+	public void observeRule(Rule rule) {
+		for (PositiveLiteral headAtom : rule.getHead().getLiterals())
+			for (int i = 0; i < headAtom.getTerms().size(); i++) {
+				Term headTerm = headAtom.getTerms().get(i);
+				String headPosition = position(headAtom.getPredicate(), i);
+				if (headTerm instanceof ExistentialVariable || SpecialPreds.isFreshConstant(headTerm))
+					anonymousPositions.add(headPosition);
+				else
+					for (Literal bodyAtom : rule.getBody().getLiterals())
+						for (int j = 0; j < bodyAtom.getTerms().size(); j++)
+							if (bodyAtom.getTerms().get(j).equals(headTerm))
+								positionSuccessors.computeIfAbsent(position(bodyAtom.getPredicate(), j),
+										p -> new HashSet<String>()).add(headPosition);
+			}
+	}
+
+	public void addRule(List<PositiveLiteral> head, List<PositiveLiteral> body, String source) {
+		ruleHeads.add(head);
+		ruleBodies.add(body);
+		ruleSources.add(source);
+	}
+
+	public boolean isEmpty() {
+		return ruleBodies.isEmpty();
+	}
+
+	public int getDroppedGuardCount() {
+		return droppedGuards;
+	}
+
+	// Compiled rules and the sources of the rules they were obtained from
+	public Map<Rule, List<String>> compile() {
+		List<String> pendingPositions = new ArrayList<String>(anonymousPositions);
+		while (!pendingPositions.isEmpty()) {
+			String position = pendingPositions.remove(pendingPositions.size() - 1);
+			for (String successor : positionSuccessors.getOrDefault(position, new HashSet<String>()))
+				if (anonymousPositions.add(successor))
+					pendingPositions.add(successor);
+		}
+
+		List<CompiledRule> compiledRules = new ArrayList<CompiledRule>();
+		for (int i = 0; i < ruleBodies.size(); i++) {
+			CompiledRule compiledRule = new CompiledRule(ruleHeads.get(i), order(ruleBodies.get(i)));
+			compiledRule.sources.add(ruleSources.get(i));
+			droppedGuards += variables(compiledRule.body).size() - compiledRule.guardedVariables.size();
+			compiledRules.add(compiledRule);
+		}
+
+		// Factoring shared first joins until every first join is used by a single rule
+		Map<Rule, List<String>> rules = new LinkedHashMap<Rule, List<String>>();
+		boolean factored = true;
+		while (factored) {
+			factored = false;
+			Map<List<PositiveLiteral>, List<CompiledRule>> rulesByFirstJoin =
+					new LinkedHashMap<List<PositiveLiteral>, List<CompiledRule>>();
+			for (CompiledRule compiledRule : compiledRules)
+				if (compiledRule.body.size() >= 2)
+					rulesByFirstJoin.computeIfAbsent(canonicalFirstJoin(compiledRule.body),
+							j -> new ArrayList<CompiledRule>()).add(compiledRule);
+
+			for (Map.Entry<List<PositiveLiteral>, List<CompiledRule>> firstJoin : rulesByFirstJoin.entrySet())
+				if (firstJoin.getValue().size() > 1) {
+					factored = true;
+					CompiledRule joinRule = factor(firstJoin.getKey(), firstJoin.getValue());
+					rules.put(joinRule.toRule(), joinRule.sources);
+				}
+		}
+
+		for (CompiledRule compiledRule : compiledRules)
+			rules.put(compiledRule.toRule(), compiledRule.sources);
+		return rules;
+	}
+
+	// Replaces the first join of the rules by an atom over a new predicate with the variables of the join
+	private CompiledRule factor(List<PositiveLiteral> canonicalJoin, List<CompiledRule> compiledRules) {
+		List<Term> joinVariables = new ArrayList<Term>(variables(canonicalJoin));
+		Predicate joinPredicate = Expressions.makePredicate(
+				SpecialPreds.joinPredPref + ++joinPredicateCounter + ">", joinVariables.size());
+
+		CompiledRule joinRule = new CompiledRule(
+				Expressions.makePositiveLiteral(joinPredicate, joinVariables), canonicalJoin);
+		for (CompiledRule compiledRule : compiledRules) {
+			for (String source : compiledRule.sources)
+				if (!joinRule.sources.contains(source))
+					joinRule.sources.add(source);
+			List<PositiveLiteral> join = compiledRule.body.subList(0, 2);
+			List<Term> ruleVariables = new ArrayList<Term>(variables(join));
+			join.clear();
+			join.add(Expressions.makePositiveLiteral(joinPredicate, ruleVariables));
+			// Join predicates only hold named individuals since their rule has the needed guards
+			compiledRule.guardedVariables.removeAll(ruleVariables);
+		}
+
+		return joinRule;
+	}
+
+	// Greedy join order; ties keep the order of the ontology
+	private List<PositiveLiteral> order(List<PositiveLiteral> body) {
+		List<PositiveLiteral> pendingAtoms = new ArrayList<PositiveLiteral>(body);
+		List<PositiveLiteral> orderedAtoms = new ArrayList<PositiveLiteral>();
+		Set<Term> boundVariables = new HashSet<Term>();
+		while (!pendingAtoms.isEmpty()) {
+			PositiveLiteral nextAtom = null;
+			int nextBound = -1;
+			int nextUnbound = 0;
+			for (PositiveLiteral atom : pendingAtoms) {
+				int bound = 0;
+				int unbound = 0;
+				for (Term term : atom.getTerms())
+					if (!(term instanceof UniversalVariable) || boundVariables.contains(term))
+						bound++;
+					else
+						unbound++;
+				if (bound > nextBound || bound == nextBound && unbound < nextUnbound) {
+					nextAtom = atom;
+					nextBound = bound;
+					nextUnbound = unbound;
+				}
+			}
+			pendingAtoms.remove(nextAtom);
+			orderedAtoms.add(nextAtom);
+			boundVariables.addAll(variables(nextAtom));
+		}
+		return orderedAtoms;
+	}
+
+	private boolean needsGuard(Term variable, List<PositiveLiteral> body) {
+		for (PositiveLiteral atom : body)
+			for (int i = 0; i < atom.getTerms().size(); i++)
+				if (atom.getTerms().get(i).equals(variable)
+						&& !anonymousPositions.contains(position(atom.getPredicate(), i)))
+					return false;
+		return true;
+	}
+
+	// The first two atoms with variables renamed in order of occurrence
+	private static List<PositiveLiteral> canonicalFirstJoin(List<PositiveLiteral> body) {
+		return rename(body.subList(0, 2), new HashMap<Term, Term>());
+	}
+
+	private static List<PositiveLiteral> rename(List<PositiveLiteral> atoms, Map<Term, Term> renaming) {
+		List<PositiveLiteral> renamedAtoms = new ArrayList<PositiveLiteral>();
+		for (PositiveLiteral atom : atoms) {
+			List<Term> terms = new ArrayList<Term>();
+			for (Term term : atom.getTerms())
+				if (term instanceof UniversalVariable)
+					terms.add(renaming.computeIfAbsent(term, v -> TermDictionary.variable(renaming.size() + 1)));
+				else
+					terms.add(term);
+			renamedAtoms.add(Expressions.makePositiveLiteral(atom.getPredicate(), terms));
+		}
+		return renamedAtoms;
+	}
+
+	private static Set<Term> variables(PositiveLiteral atom) {
+		Set<Term> variables = new LinkedHashSet<Term>();
+		for (Term term : atom.getTerms())
+			if (term instanceof UniversalVariable)
+				variables.add(term);
+		return variables;
+	}
+
+	private static Set<Term> variables(List<PositiveLiteral> atoms) {
+		Set<Term> variables = new LinkedHashSet<Term>();
+		for (PositiveLiteral atom : atoms)
+			variables.addAll(variables(atom));
+		return variables;
+	}
+
+	private static String position(Predicate predicate, int index) {
+		return predicate.getName() + "\t" + predicate.getArity() + "\t" + index;
+	}
+
+	private class CompiledRule {
+		private List<PositiveLiteral> head;
+		private List<PositiveLiteral> body;
+		private Set<Term> guardedVariables = new HashSet<Term>();
+		private List<String> sources = new ArrayList<String>();
+
+		// Variables are renamed in order of occurrence in the ordered body
+		CompiledRule(List<PositiveLiteral> head, List<PositiveLiteral> orderedBody) {
+			Map<Term, Term> renaming = new HashMap<Term, Term>();
+			this.body = rename(orderedBody, renaming);
+			this.head = rename(head, renaming);
+			for (Term variable : variables(body))
+				if (needsGuard(variable, body))
+					guardedVariables.add(variable);
+		}
+
+		CompiledRule(PositiveLiteral head, List<PositiveLiteral> orderedBody) {
+			this(new ArrayList<PositiveLiteral>(), orderedBody);
+			this.head.add(head);
+		}
+
+		Rule toRule() {
+			List<PositiveLiteral> guardedBody = new ArrayList<PositiveLiteral>();
+			Set<Term> boundVariables = new HashSet<Term>();
+			for (PositiveLiteral atom : body) {
+				guardedBody.add(atom);
+				for (Term variable : variables(atom))
+					if (boundVariables.add(variable) && guardedVariables.contains(variable))
+						guardedBody.add(Expressions.makePositiveLiteral(namedPredicate, variable));
+			}
+			return Expressions.makePositiveLiteralsRule(Expressions.makePositiveConjunction(head),
+					Expressions.makePositiveConjunction(guardedBody));
+		}
+	}
+
+}
@@ -1,6 +1,8 @@
 package reasoner;
 
+import org.semanticweb.vlog4j.core.model.api.AbstractConstant;
 import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Term;
 import org.semanticweb.vlog4j.core.model.implementation.Expressions;
 
 public class SpecialPreds {
@@ -11,4 +13,56 @@ public class SpecialPreds {
 	public static String namedPredName = "<http://NamedIndividual>";
 	public static String triplePredName = "<http://triple>";
 	public static Predicate triplePred = Expressions.makePredicate(triplePredName, 3);
+	public static String basePredPref = "<http://TransitiveBase/";
+	public static String joinPredPref = "<http://SWRLJoin";
+	public static String clashPredPref = "<http://Clash";
+	public static String selfPredPref = "<http://Self/";
+	public static String freshConstantPref = "cons";
+
+	// Predicates introduced by the transformation that do not correspond to OWL entities
+	public static boolean isInternalPredicate(Predicate predicate) {
+		return predicate.getName().equals(triplePredName) || predicate.getName().equals(namedPredName)
+				|| isSelfPredicate(predicate) || isBasePredicate(predicate)
+				|| isJoinPredicate(predicate) || predicate.getName().startsWith(clashPredPref);
+	}
+
+	// Constant standing for the anonymous individual of an existential restriction in a rule head
+	public static boolean isFreshConstant(Term term) {
+		return term instanceof AbstractConstant && isFreshConstantName(term.getName());
+	}
+
+	// Individuals of the ABox are absolute IRIs, and thus contain a colon
+	public static boolean isFreshConstantName(String name) {
+		return name.startsWith(freshConstantPref) && name.indexOf(':') < 0;
+	}
+
+	// Unary predicate holding the individuals related to themselves by a role
+	public static String selfPredName(String roleName) {
+		return selfPredPref + roleName.substring(1);
+	}
+
+	public static boolean isSelfPredicate(Predicate predicate) {
+		return predicate.getArity() == 1 && predicate.getName().startsWith(selfPredPref);
+	}
+
+	// Auxiliary predicate holding a join shared by several DL-safe rules
+	public static boolean isJoinPredicate(Predicate predicate) {
+		return predicate.getName().startsWith(joinPredPref);
+	}
+
+	// Relation holding the assertions of a transitive role and everything derived into it but transitivity
+	public static String basePredName(String roleName) {
+		return basePredPref + roleName.substring(1);
+	}
+
+	public static boolean isBasePredicate(Predicate predicate) {
+		return predicate.getArity() == 2 && predicate.getName().startsWith(basePredPref);
+	}
+
+	// Name of the entity whose assertions populate the given predicate
+	public static String dataPredName(Predicate predicate) {
+		if (isBasePredicate(predicate))
+			return "<" + predicate.getName().substring(basePredPref.length());
+		return predicate.getName();
+	}
 }
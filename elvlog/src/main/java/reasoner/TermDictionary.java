@@ -0,0 +1,115 @@
+package reasoner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.vlog4j.core.model.api.AbstractConstant;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.UniversalVariable;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+
+// Interns the terms of a conversion: each OWL entity is numbered the first time it is seen, its name is
+// rendered once, and the predicates and constants built for it are kept by number and shared by every
+// rule. The variables V0, V1, ... are allocated once and shared by all conversions.
+public class TermDictionary {
+
+	private static String variablePref = "V";
+	private static UniversalVariable[] variablePool = new UniversalVariable[64];
+
+	static {
+		for (int i = 0; i < variablePool.length; i++)
+			variablePool[i] = Expressions.makeUniversalVariable(variablePref + i);
+	}
+
+	private Map<Object, Integer> ids = new HashMap<Object, Integer>();
+	private List<String> names = new ArrayList<String>();
+	private List<Predicate> unaryPredicates = new ArrayList<Predicate>();
+	private List<Predicate> binaryPredicates = new ArrayList<Predicate>();
+	private List<Predicate> selfPredicates = new ArrayList<Predicate>();
+	private List<AbstractConstant> constants = new ArrayList<AbstractConstant>();
+
+	// Predicates that are not OWL entities, such as the special and base predicates
+	private Map<String, Predicate> unarySpecialPredicates = new HashMap<String, Predicate>();
+	private Map<String, Predicate> binarySpecialPredicates = new HashMap<String, Predicate>();
+
+	public static UniversalVariable variable(int index) {
+		if (index < variablePool.length)
+			return variablePool[index];
+		return Expressions.makeUniversalVariable(variablePref + index);
+	}
+
+	public int id(Object entity) {
+		Integer id = ids.get(entity);
+		if (id == null) {
+			id = names.size();
+			ids.put(entity, id);
+			names.add(entity.toString());
+			unaryPredicates.add(null);
+			binaryPredicates.add(null);
+			selfPredicates.add(null);
+			constants.add(null);
+		}
+		return id;
+	}
+
+	public String name(Object entity) {
+		return names.get(id(entity));
+	}
+
+	// OWL entities and SWRL predicates; classes are unary predicates and roles binary ones
+	public Predicate predicate(Object entity, int arity) {
+		int id = id(entity);
+		List<Predicate> predicates = arity == 1 ? unaryPredicates : arity == 2 ? binaryPredicates : null;
+		if (predicates == null)
+			return Expressions.makePredicate(names.get(id), arity);
+
+		Predicate predicate = predicates.get(id);
+		if (predicate == null) {
+			predicate = Expressions.makePredicate(names.get(id), arity);
+			predicates.set(id, predicate);
+		}
+		return predicate;
+	}
+
+	public Predicate specialPredicate(String name, int arity) {
+		Map<String, Predicate> predicates = arity == 1 ? unarySpecialPredicates
+				: arity == 2 ? binarySpecialPredicates : null;
+		if (predicates == null)
+			return Expressions.makePredicate(name, arity);
+		return predicates.computeIfAbsent(name, n -> Expressions.makePredicate(n, arity));
+	}
+
+	// Unary predicate for exists R.Self
+	public Predicate selfPredicate(OWLObjectProperty role) {
+		int id = id(role);
+		Predicate selfPredicate = selfPredicates.get(id);
+		if (selfPredicate == null) {
+			selfPredicate = Expressions.makePredicate(SpecialPreds.selfPredName(names.get(id)), 1);
+			selfPredicates.set(id, selfPredicate);
+		}
+		return selfPredicate;
+	}
+
+	// Constants are named by the IRI without angle brackets, as individuals loaded from the ABox and query
+	// answers are
+	public AbstractConstant constant(Object individual) {
+		int id = id(individual);
+		AbstractConstant constant = constants.get(id);
+		if (constant == null) {
+			String name = names.get(id);
+			if (name.startsWith("<") && name.endsWith(">"))
+				name = name.substring(1, name.length() - 1);
+			constant = Expressions.makeAbstractConstant(name);
+			constants.set(id, constant);
+		}
+		return constant;
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+}
@@ -0,0 +1,262 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.vlog4j.core.model.api.Constant;
+import org.semanticweb.vlog4j.core.model.api.PositiveLiteral;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.api.Variable;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+import org.semanticweb.vlog4j.core.reasoner.QueryResultIterator;
+import org.semanticweb.vlog4j.core.reasoner.Reasoner;
+
+// Conjunctive query over a materialisation, written as "?x, ?y :- <A>(?x), <R>(?x, ?y), <B>(<a>)". Without
+// the "... :-" part every variable is an answer variable. Each atom is answered by VLog and the answers are
+// joined in memory, binding the atoms with most bound positions first. An atom whose bound variables take few
+// values is answered once for each, with the values in place of the variables.
+public class ConjunctiveQuery {
+
+	private static int boundQueryLimit = 32;
+
+	private List<PositiveLiteral> atoms = new ArrayList<PositiveLiteral>();
+	private List<Variable> answerVariables = new ArrayList<Variable>();
+
+	public static ConjunctiveQuery parse(String query) {
+		ConjunctiveQuery conjunctiveQuery = new ConjunctiveQuery();
+		String body = query.trim();
+		int headEnd = body.indexOf(":-");
+		if (headEnd >= 0 && !body.substring(0, headEnd).contains("(")) {
+			for (String variable : body.substring(0, headEnd).split(","))
+				if (!variable.trim().isEmpty())
+					conjunctiveQuery.answerVariables.add(parseVariable(variable.trim()));
+			body = body.substring(headEnd + 2).trim();
+		}
+
+		for (String atom : split(body))
+			if (!atom.isEmpty())
+				conjunctiveQuery.atoms.add(parseAtom(atom));
+		if (conjunctiveQuery.atoms.isEmpty())
+			throw new IllegalArgumentException("The query has no atoms: " + query);
+
+		Set<Variable> bodyVariables = conjunctiveQuery.variables();
+		if (conjunctiveQuery.answerVariables.isEmpty())
+			conjunctiveQuery.answerVariables.addAll(bodyVariables);
+		for (Variable answerVariable : conjunctiveQuery.answerVariables)
+			if (!bodyVariables.contains(answerVariable))
+				throw new IllegalArgumentException("The answer variable ?" + answerVariable.getName()
+						+ " does not occur in the query: " + query);
+		return conjunctiveQuery;
+	}
+
+	public List<Variable> getAnswerVariables() {
+		return answerVariables;
+	}
+
+	// Atoms are answered one at a time while holding the lock of the reasoner; joins run concurrently
+	public Set<List<Term>> evaluate(Reasoner reasoner) {
+		List<Variable> variables = new ArrayList<Variable>(variables());
+		Map<Variable, Integer> variableIndexes = new HashMap<Variable, Integer>();
+		for (Variable variable : variables)
+			variableIndexes.put(variable, variableIndexes.size());
+
+		List<Term[]> bindings = new ArrayList<Term[]>();
+		bindings.add(new Term[variables.size()]);
+		boolean[] bound = new boolean[variables.size()];
+		List<PositiveLiteral> pendingAtoms = new ArrayList<PositiveLiteral>(atoms);
+		while (!pendingAtoms.isEmpty() && !bindings.isEmpty()) {
+			PositiveLiteral atom = nextAtom(pendingAtoms, variableIndexes, bound);
+			pendingAtoms.remove(atom);
+			bindings = join(bindings, atom, answers(reasoner, atom, bindings, variableIndexes, bound), variableIndexes,
+					bound);
+		}
+
+		Set<List<Term>> answers = new LinkedHashSet<List<Term>>();
+		for (Term[] binding : bindings) {
+			List<Term> answer = new ArrayList<Term>();
+			for (Variable answerVariable : answerVariables)
+				answer.add(binding[variableIndexes.get(answerVariable)]);
+			answers.add(answer);
+		}
+		return answers;
+	}
+
+	private Set<Variable> variables() {
+		Set<Variable> variables = new LinkedHashSet<Variable>();
+		for (PositiveLiteral atom : atoms)
+			for (Term term : atom.getTerms())
+				if (term instanceof Variable)
+					variables.add((Variable) term);
+		return variables;
+	}
+
+	// The atom with most constants and bound variables, so that joins are as selective as possible
+	private static PositiveLiteral nextAtom(List<PositiveLiteral> pendingAtoms, Map<Variable, Integer> variableIndexes,
+			boolean[] bound) {
+		PositiveLiteral nextAtom = null;
+		int nextScore = -1;
+		for (PositiveLiteral atom : pendingAtoms) {
+			int score = 0;
+			for (Term term : atom.getTerms())
+				if (!(term instanceof Variable) || bound[variableIndexes.get(term)])
+					score++;
+			if (score > nextScore) {
+				nextAtom = atom;
+				nextScore = score;
+			}
+		}
+		return nextAtom;
+	}
+
+	private static List<List<Term>> answers(Reasoner reasoner, PositiveLiteral atom, List<Term[]> bindings,
+			Map<Variable, Integer> variableIndexes, boolean[] bound) {
+		List<Term> terms = atom.getTerms();
+		Set<List<Term>> boundValues = new LinkedHashSet<List<Term>>();
+		for (Term[] binding : bindings) {
+			List<Term> values = new ArrayList<Term>();
+			for (Term term : terms)
+				if (term instanceof Variable && bound[variableIndexes.get(term)]) {
+					Term value = binding[variableIndexes.get(term)];
+					// Nulls can not be queried for
+					if (!(value instanceof Constant))
+						return answers(reasoner, atom);
+					values.add(value);
+				}
+			boundValues.add(values);
+			if (boundValues.size() > boundQueryLimit || values.isEmpty())
+				return answers(reasoner, atom);
+		}
+
+		List<List<Term>> answers = new ArrayList<List<Term>>();
+		for (List<Term> values : boundValues) {
+			List<Term> boundTerms = new ArrayList<Term>();
+			int valueIndex = 0;
+			for (Term term : terms)
+				boundTerms.add(term instanceof Variable && bound[variableIndexes.get(term)] ? values.get(valueIndex++)
+						: term);
+			answers.addAll(answers(reasoner, Expressions.makePositiveLiteral(atom.getPredicate(), boundTerms)));
+		}
+		return answers;
+	}
+
+	private static List<List<Term>> answers(Reasoner reasoner, PositiveLiteral atom) {
+		List<List<Term>> answers = new ArrayList<List<Term>>();
+		synchronized (reasoner) {
+			try (QueryResultIterator answerIterator = reasoner.answerQuery(atom, true)) {
+				while (answerIterator.hasNext())
+					answers.add(answerIterator.next().getTerms());
+			}
+		}
+		return answers;
+	}
+
+	// Hash join of the current bindings with the answers of the atom on its already bound variables
+	private static List<Term[]> join(List<Term[]> bindings, PositiveLiteral atom, List<List<Term>> answers,
+			Map<Variable, Integer> variableIndexes, boolean[] bound) {
+		List<Term> terms = atom.getTerms();
+		List<Integer> joinPositions = new ArrayList<Integer>();
+		List<Integer> newPositions = new ArrayList<Integer>();
+		Set<Variable> newVariables = new LinkedHashSet<Variable>();
+		for (int i = 0; i < terms.size(); i++)
+			if (terms.get(i) instanceof Variable) {
+				if (bound[variableIndexes.get(terms.get(i))])
+					joinPositions.add(i);
+				else if (newVariables.add((Variable) terms.get(i)))
+					newPositions.add(i);
+			}
+
+		Map<List<Term>, List<List<Term>>> answerIndex = new HashMap<List<Term>, List<List<Term>>>();
+		for (List<Term> answer : answers) {
+			List<Term> key = new ArrayList<Term>();
+			for (int joinPosition : joinPositions)
+				key.add(answer.get(joinPosition));
+			answerIndex.computeIfAbsent(key, k -> new ArrayList<List<Term>>()).add(answer);
+		}
+
+		List<Term[]> joinedBindings = new ArrayList<Term[]>();
+		for (Term[] binding : bindings) {
+			List<Term> key = new ArrayList<Term>();
+			for (int joinPosition : joinPositions)
+				key.add(binding[variableIndexes.get(terms.get(joinPosition))]);
+			for (List<Term> answer : answerIndex.getOrDefault(key, new ArrayList<List<Term>>())) {
+				Term[] joinedBinding = binding.clone();
+				for (int newPosition : newPositions)
+					joinedBinding[variableIndexes.get(terms.get(newPosition))] = answer.get(newPosition);
+				joinedBindings.add(joinedBinding);
+			}
+		}
+		for (Variable newVariable : newVariables)
+			bound[variableIndexes.get(newVariable)] = true;
+		return joinedBindings;
+	}
+
+	// Splits at the commas outside of parentheses and IRIs
+	private static List<String> split(String string) {
+		List<String> parts = new ArrayList<String>();
+		int depth = 0;
+		boolean inIri = false;
+		int partStart = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char character = string.charAt(i);
+			if (character == '<')
+				inIri = true;
+			else if (character == '>')
+				inIri = false;
+			else if (!inIri && character == '(')
+				depth++;
+			else if (!inIri && character == ')')
+				depth--;
+			else if (!inIri && depth == 0 && character == ',') {
+				parts.add(string.substring(partStart, i).trim());
+				partStart = i + 1;
+			}
+		}
+		parts.add(string.substring(partStart).trim());
+		return parts;
+	}
+
+	private static PositiveLiteral parseAtom(String atom) {
+		int argumentsStart = atom.indexOf('(', atom.startsWith("<") ? Math.max(0, atom.indexOf('>')) : 0);
+		if (argumentsStart <= 0 || !atom.endsWith(")"))
+			throw new IllegalArgumentException("Malformed atom: " + atom);
+		String predicateName = atom.substring(0, argumentsStart).trim();
+		List<Term> terms = new ArrayList<Term>();
+		for (String argument : split(atom.substring(argumentsStart + 1, atom.length() - 1)))
+			terms.add(parseTerm(argument));
+		return Expressions.makePositiveLiteral(predicateName, terms);
+	}
+
+	// Constants are named without angle brackets, see TermDictionary.constant
+	private static Term parseTerm(String term) {
+		if (term.startsWith("?"))
+			return parseVariable(term);
+		if (term.startsWith("<") && term.endsWith(">"))
+			return Expressions.makeAbstractConstant(term.substring(1, term.length() - 1));
+		if (term.isEmpty())
+			throw new IllegalArgumentException("Empty argument in query atom");
+		return Expressions.makeAbstractConstant(term);
+	}
+
+	private static Variable parseVariable(String variable) {
+		if (!variable.startsWith("?") || variable.length() == 1)
+			throw new IllegalArgumentException("Malformed variable: " + variable);
+		return Expressions.makeUniversalVariable(variable.substring(1));
+	}
+
+	// Canonical form, used as the key of the result cache
+	@Override
+	public String toString() {
+		StringBuilder query = new StringBuilder();
+		for (Variable answerVariable : answerVariables)
+			query.append(query.length() == 0 ? "?" : ", ?").append(answerVariable.getName());
+		query.append(" :- ");
+		for (int i = 0; i < atoms.size(); i++)
+			query.append(i == 0 ? "" : ", ").append(atoms.get(i));
+		return query.toString();
+	}
+
+}
@@ -0,0 +1,182 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.vlog4j.core.model.api.Term;
+import org.semanticweb.vlog4j.core.model.api.Variable;
+import org.semanticweb.vlog4j.core.model.implementation.DataSourceDeclarationImpl;
+import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
+import org.semanticweb.vlog4j.core.reasoner.Reasoner;
+import org.semanticweb.vlog4j.core.reasoner.implementation.RdfFileDataSource;
+import org.semanticweb.vlog4j.core.reasoner.implementation.VLogReasoner;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import reasoner.OWLToRulesConverter;
+import reasoner.SpecialPreds;
+
+// Materialises a TBox and an ABox once and then answers conjunctive queries over HTTP on the loopback
+// interface: GET /query?q=... or POST /query with the query as body. Answers are returned as tab separated
+// values headed by the answer variables, and the answers of the most recently used queries are cached.
+public class ReasoningServer {
+
+	private static int defaultPort = 8080;
+	private static int defaultCacheSize = 1024;
+
+	private Reasoner reasoner;
+	private Map<String, Set<List<Term>>> resultCache;
+
+	public ReasoningServer(Reasoner reasoner, int cacheSize) {
+		this.reasoner = reasoner;
+		this.resultCache = Collections
+				.synchronizedMap(new LinkedHashMap<String, Set<List<Term>>>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, Set<List<Term>>> eldest) {
+						return size() > cacheSize;
+					}
+				});
+	}
+
+	public static void main(String[] arguments) throws OWLOntologyCreationException, IOException {
+		File owlOntologyFile = new File(arguments[0]);
+		File dataFile = new File(arguments[1]);
+
+		int port = defaultPort;
+		int cacheSize = defaultCacheSize;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 2; i < arguments.length; i++)
+			switch (arguments[i]) {
+			case "--port":
+				port = Integer.parseInt(arguments[++i]);
+				break;
+			case "--cache-size":
+				cacheSize = Integer.parseInt(arguments[++i]);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(arguments[++i]);
+				break;
+			default:
+				System.out.println("WARNING!!! Unrecognized argument: " + arguments[i]);
+				break;
+			}
+
+		long start = System.nanoTime();
+		System.out.println(" > Loading TBox: " + nanotoSeconds(System.nanoTime() - start));
+		OWLOntology ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(owlOntologyFile);
+
+		System.out.println(" > Transforming TBox Axioms into Rules: " + nanotoSeconds(System.nanoTime() - start));
+		KnowledgeBase kb = new KnowledgeBase();
+		new OWLToRulesConverter(ontology, kb::addStatement);
+		kb.addStatement(new DataSourceDeclarationImpl(SpecialPreds.triplePred, new RdfFileDataSource(dataFile)));
+
+		System.out.println(" > Materialisation: " + nanotoSeconds(System.nanoTime() - start));
+		Reasoner reasoner = new VLogReasoner(kb);
+		reasoner.reason();
+
+		HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/query", new ReasoningServer(reasoner, cacheSize)::handle);
+		httpServer.setExecutor(Executors.newFixedThreadPool(threads));
+		httpServer.start();
+		System.out.println(" > Listening on port " + port + ": " + nanotoSeconds(System.nanoTime() - start));
+	}
+
+	public Set<List<Term>> answer(ConjunctiveQuery query) {
+		String key = query.toString();
+		Set<List<Term>> answers = resultCache.get(key);
+		if (answers == null) {
+			answers = query.evaluate(reasoner);
+			resultCache.put(key, answers);
+		}
+		return answers;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String query;
+			if (exchange.getRequestMethod().equals("POST"))
+				query = readBody(exchange.getRequestBody());
+			else
+				query = queryParameter(exchange.getRequestURI().getRawQuery());
+			if (query == null) {
+				respond(exchange, 400, "Missing query\n");
+				return;
+			}
+
+			ConjunctiveQuery conjunctiveQuery;
+			try {
+				conjunctiveQuery = ConjunctiveQuery.parse(query);
+			} catch (IllegalArgumentException e) {
+				respond(exchange, 400, e.getMessage() + "\n");
+				return;
+			}
+
+			StringBuilder response = new StringBuilder();
+			for (Variable answerVariable : conjunctiveQuery.getAnswerVariables())
+				response.append(response.length() == 0 ? "?" : "\t?").append(answerVariable.getName());
+			response.append('\n');
+			for (List<Term> answer : answer(conjunctiveQuery)) {
+				for (int i = 0; i < answer.size(); i++)
+					response.append(i == 0 ? "" : "\t").append(answer.get(i).getName());
+				response.append('\n');
+			}
+			respond(exchange, 200, response.toString());
+		} catch (RuntimeException e) {
+			System.out.println("WARNING!!! Query failed: " + e);
+			respond(exchange, 500, e + "\n");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static String queryParameter(String rawQuery) throws IOException {
+		if (rawQuery == null)
+			return null;
+		for (String parameter : rawQuery.split("&"))
+			if (parameter.startsWith("q="))
+				return URLDecoder.decode(parameter.substring(2), "UTF-8");
+		return null;
+	}
+
+	private static String readBody(InputStream body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = body.read(buffer)) != -1)
+			bytes.write(buffer, 0, read);
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String response) throws IOException {
+		byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	private static String nanotoSeconds(long nanoseconds) {
+		return Float.toString(nanoseconds / 1000000000f);
+	}
+
+}
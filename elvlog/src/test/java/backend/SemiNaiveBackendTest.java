@@ -0,0 +1,85 @@
+package backend;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.vlog4j.core.model.api.Constant;
+import org.semanticweb.vlog4j.core.model.api.Predicate;
+import org.semanticweb.vlog4j.core.model.api.Variable;
+import org.semanticweb.vlog4j.core.model.implementation.DataSourceDeclarationImpl;
+import org.semanticweb.vlog4j.core.model.implementation.Expressions;
+import org.semanticweb.vlog4j.core.reasoner.KnowledgeBase;
+import org.semanticweb.vlog4j.core.reasoner.implementation.CsvFileDataSource;
+
+// The semi-naive engine has to derive exactly the facts VLog derives on rules without owl:sameAs
+public class SemiNaiveBackendTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Predicate edge = Expressions.makePredicate("edge", 2);
+	private Predicate path = Expressions.makePredicate("path", 2);
+	private Predicate marked = Expressions.makePredicate("marked", 1);
+	private Predicate node = Expressions.makePredicate("node", 1);
+	private Predicate reachesHub = Expressions.makePredicate("reachesHub", 1);
+	private Predicate markedPath = Expressions.makePredicate("markedPath", 2);
+
+	@Test
+	public void countsMatchVLog() throws IOException {
+		KnowledgeBase kb = knowledgeBase(200, 400, 40);
+		try (ReasoningBackend vlog = new VLogBackend(kb);
+				ReasoningBackend semiNaive = new SemiNaiveBackend(kb, 2)) {
+			vlog.reason();
+			semiNaive.reason();
+			for (Predicate predicate : new Predicate[] { edge, path, marked, node, reachesHub, markedPath })
+				assertEquals(predicate.getName(), vlog.countFacts(predicate), semiNaive.countFacts(predicate));
+		}
+	}
+
+	// A random graph with some marked nodes; the rules join the new facts of several atoms in the same round
+	private KnowledgeBase knowledgeBase(int nodes, int edges, int markedNodes) throws IOException {
+		Random random = new Random(7);
+		File edgeFile = folder.newFile("edge.csv");
+		try (PrintWriter writer = new PrintWriter(edgeFile, StandardCharsets.UTF_8.name())) {
+			for (int i = 0; i < edges; i++)
+				writer.println("n" + random.nextInt(nodes) + ",n" + random.nextInt(nodes));
+		}
+		File markedFile = folder.newFile("marked.csv");
+		try (PrintWriter writer = new PrintWriter(markedFile, StandardCharsets.UTF_8.name())) {
+			for (int i = 0; i < markedNodes; i++)
+				writer.println("n" + random.nextInt(nodes));
+		}
+
+		Variable x = Expressions.makeUniversalVariable("X");
+		Variable y = Expressions.makeUniversalVariable("Y");
+		Variable z = Expressions.makeUniversalVariable("Z");
+		Constant hub = Expressions.makeAbstractConstant("n0");
+
+		KnowledgeBase kb = new KnowledgeBase();
+		kb.addStatement(new DataSourceDeclarationImpl(edge, new CsvFileDataSource(edgeFile)));
+		kb.addStatement(new DataSourceDeclarationImpl(marked, new CsvFileDataSource(markedFile)));
+		kb.addStatement(Expressions.makeRule(Expressions.makePositiveLiteral(path, x, y),
+				Expressions.makePositiveLiteral(edge, x, y)));
+		kb.addStatement(Expressions.makeRule(Expressions.makePositiveLiteral(path, x, z),
+				Expressions.makePositiveLiteral(path, x, y), Expressions.makePositiveLiteral(path, y, z)));
+		kb.addStatement(Expressions.makeRule(Expressions.makePositiveLiteral(node, x),
+				Expressions.makePositiveLiteral(edge, x, y)));
+		kb.addStatement(Expressions.makeRule(Expressions.makePositiveLiteral(node, y),
+				Expressions.makePositiveLiteral(edge, x, y)));
+		kb.addStatement(Expressions.makeRule(Expressions.makePositiveLiteral(reachesHub, x),
+				Expressions.makePositiveLiteral(path, x, hub)));
+		kb.addStatement(Expressions.makeRule(Expressions.makePositiveLiteral(markedPath, x, z),
+				Expressions.makePositiveLiteral(marked, x), Expressions.makePositiveLiteral(path, x, y),
+				Expressions.makePositiveLiteral(path, y, z), Expressions.makePositiveLiteral(marked, z)));
+		return kb;
+	}
+
+}